@@ -0,0 +1,78 @@
+package com.trsang.doan2.config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+import com.trsang.doan2.services.interfaces.IIngestMetrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Tracks how many inbound MQTT messages are waiting on the partition workers,
+ * how long they waited and how long the handlers took, and counts them per
+ * node as they arrive.
+ */
+public class MqttChannelMetricsInterceptor implements ExecutorChannelInterceptor {
+
+    private final IIngestMetrics ingestMetrics;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ThreadLocal<Long> handleStart = new ThreadLocal<>();
+    private final Timer queueWaitTimer;
+    private final Timer processingTimer;
+
+    public MqttChannelMetricsInterceptor(MeterRegistry meterRegistry, IIngestMetrics ingestMetrics) {
+        this.ingestMetrics = ingestMetrics;
+        Gauge.builder("mqtt.inbound.queue.depth", pending, AtomicInteger::get)
+                .description("Inbound MQTT messages waiting for a partition worker")
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("mqtt.inbound.queue.wait")
+                .description("Time between receiving an MQTT message and a worker picking it up")
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("mqtt.inbound.processing")
+                .description("Time spent by the MQTT message handlers")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        pending.incrementAndGet();
+        ingestMetrics.messageReceived((String) message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC));
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (!sent || ex != null) {
+            pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        pending.decrementAndGet();
+        Long receivedAt = message.getHeaders().getTimestamp();
+        if (receivedAt != null) {
+            queueWaitTimer.record(System.currentTimeMillis() - receivedAt, TimeUnit.MILLISECONDS);
+        }
+        handleStart.set(System.nanoTime());
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+            Exception ex) {
+        Long start = handleStart.get();
+        if (start != null) {
+            processingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            handleStart.remove();
+        }
+    }
+}
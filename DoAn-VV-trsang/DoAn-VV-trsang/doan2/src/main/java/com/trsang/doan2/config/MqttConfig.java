@@ -1,25 +1,36 @@
 package com.trsang.doan2.config;
 
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import java.util.UUID;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.BridgeFrom;
+import org.springframework.integration.channel.PartitionedChannel;
+import org.springframework.integration.channel.PublishSubscribeChannel;
 import org.springframework.integration.core.MessageProducer;
 import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
 import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
 import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.integration.channel.DirectChannel;
 
+import com.trsang.doan2.services.interfaces.IIngestMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Configuration
 public class MqttConfig {
 
+    private static final String TELEMETRY_TOPIC = "smarttrash/+/data";
+
     @Value("${mqtt.server-uris:ssl://localhost:8883}")
     private String mqttServerUris;
 
@@ -32,6 +43,33 @@ public class MqttConfig {
     @Value("${mqtt.client-id:springBootClient}")
     private String mqttClientId;
 
+    // Also raises Paho's own window (default 10), past which publish() fails immediately
+    @Value("${mqtt.outbound.max-inflight:100}")
+    private int outboundMaxInflight;
+
+    @Value("${mqtt.inbound.partitions:4}")
+    private int inboundPartitions;
+
+    @Value("${mqtt.inbound.virtual-threads:true}")
+    private boolean inboundVirtualThreads;
+
+    // The partition executors queue without bound, this caps what may pile up in them
+    @Value("${mqtt.inbound.max-pending:1000}")
+    private int inboundMaxPending;
+
+    // Shared subscription mode: every replica joins the same group and the broker splits the
+    // telemetry between them, so N instances can ingest without writing each reading N times
+    @Value("${mqtt.inbound.shared-subscription.enabled:false}")
+    private boolean sharedSubscription;
+
+    @Value("${mqtt.inbound.shared-subscription.group:doan2-ingest}")
+    private String sharedSubscriptionGroup;
+
+    // Appended to client ids in shared mode (random when unset); two clients with the same id
+    // would keep kicking each other off
+    @Value("${mqtt.instance-id:}")
+    private String instanceId;
+
     @Bean
     public MqttPahoClientFactory mqttClientFactory() {
         DefaultMqttPahoClientFactory factory = new DefaultMqttPahoClientFactory();
@@ -59,14 +97,30 @@ public class MqttConfig {
         options.setAutomaticReconnect(true);
         options.setConnectionTimeout(30);
         options.setKeepAliveInterval(60);
+        options.setMaxInflight(outboundMaxInflight);
 
         factory.setConnectionOptions(options);
         return factory;
     }
 
     @Bean
-    public MessageChannel mqttInputChannel() {
-        return new DirectChannel();
+    public MessageChannel mqttInputChannel(MeterRegistry meterRegistry, IIngestMetrics ingestMetrics) {
+        // Messages of one node always land on the same partition, so each bin stays ordered
+        // while different bins are parsed and saved in parallel
+        PartitionedChannel channel = new PartitionedChannel(inboundPartitions, MqttConfig::partitionKey);
+        if (inboundVirtualThreads) {
+            channel.setThreadFactory(Thread.ofVirtual().name("mqtt-inbound-", 0).factory());
+        }
+        channel.addInterceptor(new MqttInboundBackpressureInterceptor(meterRegistry, inboundMaxPending));
+        channel.addInterceptor(new MqttChannelMetricsInterceptor(meterRegistry, ingestMetrics));
+        return channel;
+    }
+
+    @Bean
+    @BridgeFrom("mqttInputChannel")
+    public MessageChannel mqttTelemetryChannel() {
+        // Fan out every message to all handlers (saver, websocket bridge) on the partition thread
+        return new PublishSubscribeChannel();
     }
 
     @Bean
@@ -74,44 +128,58 @@ public class MqttConfig {
         // Use the first server URI from the configured list
         String firstServerUri = mqttServerUris.split(",")[0];
 
+        if (sharedSubscription) {
+            log.info("MQTT inbound uses shared subscription group {} as {}", sharedSubscriptionGroup, clientId());
+            SharedSubscriptionInboundAdapter adapter = new SharedSubscriptionInboundAdapter(
+                    mqttServerUris.split(","),
+                    clientId() + "-subscriber",
+                    mqttUsername,
+                    mqttPassword,
+                    sharedSubscriptionGroup,
+                    TELEMETRY_TOPIC);
+            adapter.setOutputChannelName("mqttInputChannel");
+            return adapter;
+        }
+
         MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter(
                 firstServerUri,
-                mqttClientId + "-subscriber",
+                clientId() + "-subscriber",
                 mqttClientFactory(),
-                "smarttrash/+/data");
+                TELEMETRY_TOPIC);
 
         adapter.setCompletionTimeout(5000);
-        adapter.setConverter(new DefaultPahoMessageConverter());
+        // Hand the raw payload bytes to the handlers, they decode it themselves
+        DefaultPahoMessageConverter converter = new DefaultPahoMessageConverter();
+        converter.setPayloadAsBytes(true);
+        adapter.setConverter(converter);
         adapter.setQos(1);
-        adapter.setOutputChannel(mqttInputChannel());
+        adapter.setOutputChannelName("mqttInputChannel");
 
         return adapter;
     }
 
-    @Bean
-    public MqttClient mqttClient(MqttPahoClientFactory factory) throws MqttException {
-        MqttClient client = new MqttClient(
+    @Bean(destroyMethod = "")
+    public MqttAsyncClient mqttOutboundClient() throws MqttException {
+        // Connected and closed by MqttService; the factory options hold the full server list
+        return new MqttAsyncClient(
                 mqttServerUris.split(",")[0],
-                mqttClientId,
+                clientId(),
                 null);
-        client.setCallback(new org.eclipse.paho.client.mqttv3.MqttCallback() {
-            @Override
-            public void connectionLost(Throwable cause) {
-                log.warn("MQTT connection lost: {}", cause.getMessage());
-            }
-
-            @Override
-            public void messageArrived(String topic, org.eclipse.paho.client.mqttv3.MqttMessage message)
-                    throws Exception {
-                log.debug("Message arrived on topic {}: {}", topic, new String(message.getPayload()));
-            }
-
-            @Override
-            public void deliveryComplete(org.eclipse.paho.client.mqttv3.IMqttDeliveryToken token) {
-                log.debug("Message delivery completed");
-            }
-        });
-
-        return client;
+    }
+
+    private String clientId() {
+        if (!sharedSubscription) {
+            return mqttClientId;
+        }
+        if (instanceId == null || instanceId.isBlank()) {
+            instanceId = UUID.randomUUID().toString().substring(0, 8);
+        }
+        return mqttClientId + "-" + instanceId;
+    }
+
+    private static Object partitionKey(Message<?> message) {
+        // Topic format: smarttrash/{node}/data
+        Object topic = message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC);
+        return topic != null ? topic : "";
     }
 }
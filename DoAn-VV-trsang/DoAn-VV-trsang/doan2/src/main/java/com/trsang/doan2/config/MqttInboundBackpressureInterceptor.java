@@ -0,0 +1,82 @@
+package com.trsang.doan2.config;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Caps how many inbound MQTT messages may be queued or in progress on the
+ * partition workers. The partition executors have unbounded queues, so once
+ * the cap is reached the sending thread (the MQTT client callback) blocks
+ * until a worker finishes a message. The acknowledgement to the broker is
+ * held back with it, so the broker stops delivering instead of the heap
+ * filling up, and at most the capped messages are lost on a crash.
+ */
+public class MqttInboundBackpressureInterceptor implements ExecutorChannelInterceptor {
+
+    private final int maxPending;
+    private final Semaphore permits;
+    private final Counter blockedCounter;
+    private final Timer blockedTimer;
+
+    public MqttInboundBackpressureInterceptor(MeterRegistry meterRegistry, int maxPending) {
+        this.maxPending = maxPending;
+        this.permits = new Semaphore(maxPending);
+        Gauge.builder("mqtt.inbound.inflight", permits, p -> maxPending - p.availablePermits())
+                .description("Inbound MQTT messages queued or being handled by the partition workers")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.inbound.inflight.limit", permits, p -> maxPending)
+                .description("Cap on inbound MQTT messages in flight, the receiver blocks when it is reached")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.inbound.blocked", permits, Semaphore::getQueueLength)
+                .description("MQTT receiver threads currently waiting because the in-flight cap is reached")
+                .register(meterRegistry);
+        this.blockedCounter = meterRegistry.counter("mqtt.inbound.backpressure");
+        this.blockedTimer = Timer.builder("mqtt.inbound.backpressure.wait")
+                .description("Time the MQTT receiver waited for room under the in-flight cap")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (permits.tryAcquire()) {
+            return message;
+        }
+        blockedCounter.increment();
+        long start = System.nanoTime();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException(message, "Interrupted waiting for room among " + maxPending
+                    + " in-flight MQTT messages", e);
+        } finally {
+            blockedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        // Never reached a worker, so afterMessageHandled will not run for it
+        if (!sent || ex != null) {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+            Exception ex) {
+        permits.release();
+    }
+}
@@ -0,0 +1,85 @@
+package com.trsang.doan2.config;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.RequestUpgradeStrategy;
+import org.springframework.web.socket.server.standard.StandardWebSocketUpgradeStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * Handshake handler for /ws-plain. Tomcat negotiates permessage-deflate on its
+ * own whenever the browser offers it, even when Spring selects no extensions,
+ * so turning compression off means hiding the offer from the upgrade itself.
+ */
+public class PlainSocketHandshakeHandler extends DefaultHandshakeHandler {
+
+    public PlainSocketHandshakeHandler(boolean compressionEnabled) {
+        super(compressionEnabled ? new StandardWebSocketUpgradeStrategy()
+                : new WithoutCompression(new StandardWebSocketUpgradeStrategy()));
+    }
+
+    private record WithoutCompression(RequestUpgradeStrategy delegate) implements RequestUpgradeStrategy {
+
+        @Override
+        public String[] getSupportedVersions() {
+            return delegate.getSupportedVersions();
+        }
+
+        @Override
+        public List<WebSocketExtension> getSupportedExtensions(ServerHttpRequest request) {
+            return List.of();
+        }
+
+        @Override
+        public void upgrade(ServerHttpRequest request, ServerHttpResponse response, String selectedProtocol,
+                List<WebSocketExtension> selectedExtensions, Principal user, WebSocketHandler wsHandler,
+                Map<String, Object> attributes) throws HandshakeFailureException {
+            if (request instanceof ServletServerHttpRequest servletRequest) {
+                request = new ServletServerHttpRequest(new WithoutExtensions(servletRequest.getServletRequest()));
+            }
+            delegate.upgrade(request, response, selectedProtocol, selectedExtensions, user, wsHandler, attributes);
+        }
+    }
+
+    private static final class WithoutExtensions extends HttpServletRequestWrapper {
+
+        private WithoutExtensions(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isExtensions(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isExtensions(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                    .filter(name -> !isExtensions(name))
+                    .toList());
+        }
+
+        private static boolean isExtensions(String name) {
+            return WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name);
+        }
+    }
+}
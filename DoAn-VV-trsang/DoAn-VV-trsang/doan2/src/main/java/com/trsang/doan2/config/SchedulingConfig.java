@@ -4,7 +4,11 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
+import com.trsang.doan2.services.interfaces.IAuthAuditService;
+import com.trsang.doan2.services.interfaces.ILatestReadingRegistry;
 import com.trsang.doan2.services.interfaces.IRefreshTokenService;
+import com.trsang.doan2.services.interfaces.ISensorDataPartitionService;
+import com.trsang.doan2.services.interfaces.ISensorDataRetentionService;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,10 +19,39 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class SchedulingConfig {
     private final IRefreshTokenService refreshTokenService;
+    private final ILatestReadingRegistry latestReadingRegistry;
+    private final ISensorDataRetentionService sensorDataRetentionService;
+    private final ISensorDataPartitionService sensorDataPartitionService;
+    private final IAuthAuditService authAuditService;
 
     @Scheduled(cron = "0 0 0 * * ?") // Every day at midnight
     public void purgeExpiredTokens() {
         log.info("Running scheduled task: Purging expired refresh tokens");
         refreshTokenService.purgeExpiredTokens();
     }
+
+    @Scheduled(cron = "${app.security.audit.purge-cron:0 15 0 * * ?}") // Every day at 00:15 by default
+    public void purgeAuthAuditEvents() {
+        log.info("Running scheduled task: Purging old auth audit events");
+        authAuditService.purgeExpired();
+    }
+
+    @Scheduled(fixedDelayString = "${app.sensor-data.latest.consistency-check-ms:600000}",
+            initialDelayString = "${app.sensor-data.latest.consistency-check-ms:600000}")
+    public void verifyLatestReadings() {
+        log.debug("Running scheduled task: Checking latest reading registry against database");
+        latestReadingRegistry.reconcile();
+    }
+
+    @Scheduled(cron = "${app.sensor-data.partitioning.cron:0 0 2 * * ?}") // Every day at 02:00 by default
+    public void maintainSensorDataPartitions() {
+        log.info("Running scheduled task: Maintaining sensor data partitions");
+        sensorDataPartitionService.maintainPartitions();
+    }
+
+    @Scheduled(cron = "${app.sensor-data.retention.cron:0 30 2 * * ?}") // Every day at 02:30 by default
+    public void applySensorDataRetention() {
+        log.info("Running scheduled task: Applying sensor data retention");
+        sensorDataRetentionService.applyRetention();
+    }
 }
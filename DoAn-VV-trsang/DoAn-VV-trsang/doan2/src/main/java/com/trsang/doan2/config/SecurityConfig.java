@@ -1,24 +1,33 @@
 package com.trsang.doan2.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authorization.AuthorityAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.context.SecurityContextHolderFilter;
 import org.springframework.web.cors.CorsConfiguration;
 
 import com.trsang.doan2.repositories.IUserRepository;
 import com.trsang.doan2.security.JwtAuthenticationFilter;
+import com.trsang.doan2.security.PooledPasswordEncoder;
 import com.trsang.doan2.security.UserDetailsImpl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
@@ -31,15 +40,41 @@ public class SecurityConfig {
     private final CorsConfig corsConfig;
     private final IUserRepository userRepository;
 
+    // Prometheus cannot log in for a JWT; when true, /actuator/prometheus is open to scrapers,
+    // so restrict it at the network level (or use management.server.port) instead
+    @Value("${app.metrics.prometheus.public:false}")
+    private boolean prometheusPublic;
+
     public SecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter, CorsConfig corsConfig, IUserRepository userRepository) {
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
         this.corsConfig = corsConfig;
         this.userRepository = userRepository;
     }
 
+    @Bean(destroyMethod = "shutdown")
+    public PasswordEncoder passwordEncoder(
+            MeterRegistry meterRegistry,
+            @Value("${app.security.password-strength:12}") int strength,
+            @Value("${app.security.password-hash.threads:0}") int threads,
+            @Value("${app.security.password-hash.queue-capacity:32}") int queueCapacity,
+            @Value("${app.security.password-hash.wait-timeout-ms:5000}") long waitTimeoutMs) {
+        // 0 threads: one per core, BCrypt is pure CPU
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new PooledPasswordEncoder(strength, poolSize, queueCapacity, waitTimeoutMs, meterRegistry);
+    }
+
+    /**
+     * Picked up by the DaoAuthenticationProvider: a successful login whose stored hash has
+     * a different cost than app.security.password-strength is rehashed with the current cost
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public UserDetailsPasswordService userDetailsPasswordService() {
+        return (user, newPassword) -> userRepository.findByUsername(user.getUsername())
+                .<UserDetails>map(entity -> {
+                    entity.setPassword(newPassword);
+                    return UserDetailsImpl.build(userRepository.save(entity));
+                })
+                .orElse(user);
     }
     
     @Bean
@@ -75,6 +110,10 @@ public class SecurityConfig {
                         .requestMatchers("/api/ollama/chat/**").permitAll() // Make chat API public too for testing
                         // Swagger UI and API docs endpoints
                         .requestMatchers("/swagger-ui/**", "/swagger-ui.html", "/v3/api-docs/**", "/api-docs/**").permitAll()
+                        // Actuator: health is public, everything else is admin only
+                        .requestMatchers("/actuator/health/**").permitAll()
+                        .requestMatchers("/actuator/prometheus").access(prometheusAccess())
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         // Admin endpoints
                         .requestMatchers("/api/admin/**").hasRole("ADMIN")
                         // Secured endpoints
@@ -83,5 +122,12 @@ public class SecurityConfig {
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
                 .addFilterBefore(corsConfig.corsFilter(), SecurityContextHolderFilter.class)  // Add CORS filter before security filters
                 .build();
-    }   
+    }
+
+    private AuthorizationManager<RequestAuthorizationContext> prometheusAccess() {
+        if (prometheusPublic) {
+            return (authentication, context) -> new AuthorizationDecision(true);
+        }
+        return AuthorityAuthorizationManager.hasRole("ADMIN");
+    }
 }
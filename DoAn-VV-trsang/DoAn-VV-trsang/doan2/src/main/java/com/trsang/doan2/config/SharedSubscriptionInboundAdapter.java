@@ -0,0 +1,197 @@
+package com.trsang.doan2.config;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.integration.mqtt.event.MqttConnectionFailedEvent;
+import org.springframework.integration.mqtt.event.MqttSubscribedEvent;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+
+import com.hivemq.client.mqtt.MqttClient;
+import com.hivemq.client.mqtt.MqttClientTransportConfig;
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5ClientBuilder;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5Subscription;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MQTT v5 inbound adapter that joins a shared subscription
+ * ($share/{group}/{filter}). The broker hands each message to exactly one
+ * member of the group, so several backend instances split the telemetry
+ * between them instead of each writing every reading.
+ * <p>
+ * Messages carry the same headers as the Paho adapter (received topic and
+ * QoS) and raw payload bytes, so the downstream channel does not change.
+ * Like the Paho factory, it fails over between the configured server URIs,
+ * and like the Paho adapter, topics can be added and removed at runtime and
+ * connection changes are published as MqttSubscribedEvent and
+ * MqttConnectionFailedEvent.
+ */
+@Slf4j
+public class SharedSubscriptionInboundAdapter extends MessageProducerSupport {
+
+    private final Mqtt5AsyncClient client;
+    private final List<MqttClientTransportConfig> servers;
+    private final AtomicInteger currentServer = new AtomicInteger();
+    private final String group;
+    // Topic filter -> QoS, all of them are subscribed again after each reconnect
+    private final Map<String, Integer> topics = new ConcurrentHashMap<>();
+    private final String username;
+    private final String password;
+
+    public SharedSubscriptionInboundAdapter(String[] serverUris, String clientId, String username, String password,
+            String group, String topicFilter) {
+        this.servers = Arrays.stream(serverUris)
+                .map(SharedSubscriptionInboundAdapter::transportConfig)
+                .toList();
+        Mqtt5ClientBuilder builder = MqttClient.builder()
+                .useMqttVersion5()
+                .identifier(clientId)
+                .transportConfig(servers.get(0))
+                // Also retries a failed first connect, e.g. when the broker starts after the app
+                .automaticReconnectWithDefaultConfig()
+                .addConnectedListener(context -> subscribe())
+                .addDisconnectedListener(context -> {
+                    log.warn("MQTT v5 client {} disconnected: {}", clientId, context.getCause().getMessage());
+                    publishEvent(new MqttConnectionFailedEvent(this, context.getCause()));
+                    if (servers.size() > 1) {
+                        MqttClientTransportConfig next = servers.get(currentServer.incrementAndGet() % servers.size());
+                        context.getReconnector().transportConfig(next);
+                    }
+                });
+        this.client = builder.buildAsync();
+        // One callback for all subscribed messages, so subscribing again after a reconnect
+        // cannot register a second consumer for the same stream
+        this.client.publishes(MqttGlobalPublishFilter.SUBSCRIBED, this::handlePublish);
+        this.group = group;
+        this.topics.put(topicFilter, MqttQos.AT_LEAST_ONCE.getCode());
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public String getComponentType() {
+        return "mqtt:shared-subscription-inbound-channel-adapter";
+    }
+
+    @Override
+    protected void doStart() {
+        var connect = client.connectWith().cleanStart(true);
+        if (username != null && !username.isEmpty()) {
+            connect = connect.simpleAuth()
+                    .username(username)
+                    .password(password != null ? password.getBytes(StandardCharsets.UTF_8) : new byte[0])
+                    .applySimpleAuth();
+        }
+        connect.send().whenComplete((ack, error) -> {
+            if (error != null) {
+                log.warn("MQTT v5 connect failed, retrying in the background: {}", error.getMessage());
+            }
+        });
+    }
+
+    @Override
+    protected void doStop() {
+        client.disconnect();
+    }
+
+    public boolean isConnected() {
+        return client.getState().isConnected();
+    }
+
+    public void addTopic(String topicFilter, int qos) {
+        topics.put(topicFilter, qos);
+        if (isConnected()) {
+            subscribe(Map.of(topicFilter, qos));
+        }
+    }
+
+    public void removeTopic(String... topicFilters) {
+        for (String topicFilter : topicFilters) {
+            if (topics.remove(topicFilter) != null && isConnected()) {
+                client.unsubscribeWith()
+                        .topicFilter(sharedFilter(topicFilter))
+                        .send()
+                        .whenComplete((unsubAck, error) -> {
+                            if (error != null) {
+                                log.warn("Could not unsubscribe from {}: {}", sharedFilter(topicFilter),
+                                        error.getMessage());
+                            }
+                        });
+            }
+        }
+    }
+
+    private static MqttClientTransportConfig transportConfig(String serverUri) {
+        URI uri = URI.create(serverUri.trim());
+        boolean tls = "ssl".equals(uri.getScheme()) || "mqtts".equals(uri.getScheme());
+        var config = MqttClientTransportConfig.builder()
+                .serverHost(uri.getHost())
+                .serverPort(uri.getPort() > 0 ? uri.getPort() : tls ? 8883 : 1883);
+        return tls ? config.sslWithDefaultConfig().build() : config.build();
+    }
+
+    private void subscribe() {
+        // The session starts clean on every connect, so the subscriptions are made each time
+        subscribe(Map.copyOf(topics));
+    }
+
+    private void subscribe(Map<String, Integer> filters) {
+        if (filters.isEmpty()) {
+            return;
+        }
+        List<Mqtt5Subscription> subscriptions = filters.entrySet().stream()
+                .map(entry -> Mqtt5Subscription.builder()
+                        .topicFilter(sharedFilter(entry.getKey()))
+                        .qos(MqttQos.fromCode(entry.getValue()))
+                        .build())
+                .toList();
+        client.subscribeWith()
+                .addSubscriptions(subscriptions)
+                .send()
+                .whenComplete((subAck, error) -> {
+                    if (error != null) {
+                        log.error("Could not subscribe to {}: {}", filters.keySet(), error.getMessage());
+                    } else {
+                        log.info("Subscribed to {} in shared group {}", filters.keySet(), group);
+                        publishEvent(new MqttSubscribedEvent(this, "Subscribed to " + filters.keySet()));
+                    }
+                });
+    }
+
+    private void publishEvent(ApplicationEvent event) {
+        ApplicationContext context = getApplicationContext();
+        if (context != null) {
+            context.publishEvent(event);
+        }
+    }
+
+    private String sharedFilter(String topicFilter) {
+        return "$share/" + group + "/" + topicFilter;
+    }
+
+    private void handlePublish(Mqtt5Publish publish) {
+        try {
+            sendMessage(MessageBuilder.withPayload(publish.getPayloadAsBytes())
+                    .setHeader(MqttHeaders.RECEIVED_TOPIC, publish.getTopic().toString())
+                    .setHeader(MqttHeaders.RECEIVED_QOS, publish.getQos().getCode())
+                    .setHeader(MqttHeaders.RECEIVED_RETAINED, publish.isRetain())
+                    .build());
+        } catch (Exception e) {
+            log.error("Error handling MQTT message on {}: {}", publish.getTopic(), e.getMessage(), e);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.trsang.doan2.config;
 
 import lombok.RequiredArgsConstructor;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
@@ -15,8 +17,14 @@ public class SocketConfig implements WebSocketConfigurer {
 
     private final SocketHandler socketHandler;
 
+    // Tomcat offers permessage-deflate; it costs CPU per session, so it can be switched off
+    @Value("${app.websocket.compression.enabled:true}")
+    private boolean compressionEnabled;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(socketHandler, "/ws-plain").setAllowedOrigins("*");
+        registry.addHandler(socketHandler, "/ws-plain")
+                .setHandshakeHandler(new PlainSocketHandshakeHandler(compressionEnabled))
+                .setAllowedOrigins("*");
     }
 }
@@ -1,20 +1,105 @@
 package com.trsang.doan2.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.util.StringUtils;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+	// Relay mode forwards /topic and /queue to an external STOMP broker (RabbitMQ, ActiveMQ)
+	// so several backend instances share subscriptions; off means the in-memory simple broker
+	@Value("${app.websocket.stomp.relay.enabled:false}")
+	private boolean relayEnabled;
+
+	@Value("${app.websocket.stomp.relay.host:localhost}")
+	private String relayHost;
+
+	@Value("${app.websocket.stomp.relay.port:61613}")
+	private int relayPort;
+
+	@Value("${app.websocket.stomp.relay.client-login:guest}")
+	private String clientLogin;
+
+	@Value("${app.websocket.stomp.relay.client-passcode:guest}")
+	private String clientPasscode;
+
+	@Value("${app.websocket.stomp.relay.system-login:guest}")
+	private String systemLogin;
+
+	@Value("${app.websocket.stomp.relay.system-passcode:guest}")
+	private String systemPasscode;
+
+	@Value("${app.websocket.stomp.relay.virtual-host:}")
+	private String virtualHost;
+
+	@Value("${app.websocket.stomp.inbound.core-pool-size:4}")
+	private int inboundCorePoolSize;
+
+	@Value("${app.websocket.stomp.inbound.max-pool-size:16}")
+	private int inboundMaxPoolSize;
+
+	@Value("${app.websocket.stomp.inbound.queue-capacity:10000}")
+	private int inboundQueueCapacity;
+
+	@Value("${app.websocket.stomp.outbound.core-pool-size:4}")
+	private int outboundCorePoolSize;
+
+	@Value("${app.websocket.stomp.outbound.max-pool-size:16}")
+	private int outboundMaxPoolSize;
+
+	@Value("${app.websocket.stomp.outbound.queue-capacity:10000}")
+	private int outboundQueueCapacity;
+
 	@Override
 	public void configureMessageBroker(MessageBrokerRegistry registry) {
-		// Simple in-memory broker for demo & development
-		registry.enableSimpleBroker("/topic", "/queue");
+		if (relayEnabled) {
+			var relay = registry.enableStompBrokerRelay("/topic", "/queue")
+					.setRelayHost(relayHost)
+					.setRelayPort(relayPort)
+					.setClientLogin(clientLogin)
+					.setClientPasscode(clientPasscode)
+					.setSystemLogin(systemLogin)
+					.setSystemPasscode(systemPasscode)
+					// Lets /user destinations reach sessions connected to another instance
+					.setUserDestinationBroadcast("/topic/unresolved-user-destination")
+					.setUserRegistryBroadcast("/topic/simp-user-registry");
+			if (StringUtils.hasText(virtualHost)) {
+				relay.setVirtualHost(virtualHost);
+			}
+			log.info("STOMP broker relay enabled ({}:{})", relayHost, relayPort);
+		} else {
+			// Simple in-memory broker for demo & development
+			registry.enableSimpleBroker("/topic", "/queue");
+		}
 		registry.setApplicationDestinationPrefixes("/app");
+		// Outbound runs on a pool, keep each session's messages in the order they were sent
+		registry.setPreservePublishOrder(true);
+	}
+
+	@Override
+	public void configureClientInboundChannel(ChannelRegistration registration) {
+		registration.taskExecutor()
+				.corePoolSize(inboundCorePoolSize)
+				.maxPoolSize(inboundMaxPoolSize)
+				.queueCapacity(inboundQueueCapacity);
+	}
+
+	@Override
+	public void configureClientOutboundChannel(ChannelRegistration registration) {
+		registration.taskExecutor()
+				.corePoolSize(outboundCorePoolSize)
+				.maxPoolSize(outboundMaxPoolSize)
+				.queueCapacity(outboundQueueCapacity);
 	}
 
 	@Override
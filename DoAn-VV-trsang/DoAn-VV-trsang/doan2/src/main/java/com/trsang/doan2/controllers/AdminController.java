@@ -22,17 +22,21 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.trsang.doan2.dtos.admin.FailedLoginStats;
 import com.trsang.doan2.dtos.admin.UserAdminResponse;
 import com.trsang.doan2.dtos.admin.UserStatusUpdateRequest;
 import com.trsang.doan2.dtos.requests.RevokeTokenRequest;
 import com.trsang.doan2.dtos.responses.MessageResponse;
+import com.trsang.doan2.dtos.responses.WebSocketSessionStats;
 import com.trsang.doan2.entities.RefreshToken;
 import com.trsang.doan2.events.AuthenticationEvent;
 import com.trsang.doan2.repositories.IRefreshTokenRepository;
 import com.trsang.doan2.repositories.IUserRepository;
 import com.trsang.doan2.services.interfaces.IAdminUserService;
+import com.trsang.doan2.services.interfaces.IAuthAuditService;
 import com.trsang.doan2.services.interfaces.IAuthService;
 import com.trsang.doan2.services.interfaces.IRefreshTokenService;
+import com.trsang.doan2.services.interfaces.ISocketService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -61,6 +65,8 @@ public class AdminController {
     private final IRefreshTokenRepository refreshTokenRepository;
     private final ApplicationEventPublisher eventPublisher;
     private final IAdminUserService adminUserService;
+    private final ISocketService socketService;
+    private final IAuthAuditService authAuditService;
 
     @PostMapping("/tokens/revoke")
     @Operation(
@@ -261,12 +267,23 @@ public class AdminController {
         }
     }
 
+    @GetMapping("/websocket/sessions")
+    @Operation(summary = "Outbound queue state of the plain WebSocket sessions")
+    public ResponseEntity<List<WebSocketSessionStats>> getWebSocketSessions() {
+        return ResponseEntity.ok(socketService.getSessionStats());
+    }
+
+    @GetMapping("/auth/failed-logins")
+    @Operation(summary = "Failed logins per IP and minute over the last minutes, busiest first")
+    public ResponseEntity<List<FailedLoginStats>> getFailedLogins(
+            @RequestParam(defaultValue = "5") int minutes) {
+        return ResponseEntity.ok(authAuditService.getFailedLoginsPerIp(minutes));
+    }
+
     private String getClientIp(HttpServletRequest httpRequest) {
-        String xfHeader = httpRequest.getHeader("X-Forwarded-For");
-        if (xfHeader == null) {
-            return httpRequest.getRemoteAddr();
-        }
-        return xfHeader.split(",")[0];
+        // X-Forwarded-For is only honoured from the trusted proxies in server.tomcat.remoteip.internal-proxies,
+        // Tomcat has already applied it to the remote address
+        return httpRequest.getRemoteAddr();
     }
 }
 
@@ -3,6 +3,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,6 +20,7 @@ import com.trsang.doan2.events.AuthenticationEvent;
 import com.trsang.doan2.exceptions.AccountDeactivatedException;
 import com.trsang.doan2.exceptions.RefreshTokenException;
 import com.trsang.doan2.services.interfaces.IAuthService;
+import com.trsang.doan2.services.interfaces.ILoginAttemptLimiter;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -41,6 +43,7 @@ public class AuthController {
 
     private final IAuthService authService;
     private final ApplicationEventPublisher eventPublisher;
+    private final ILoginAttemptLimiter loginAttemptLimiter;
 
     @PostMapping("/login")
     @Operation(
@@ -55,12 +58,22 @@ public class AuthController {
                     @ApiResponse(
                         responseCode = "401", 
                         description = "Invalid username or password"
+                    ),
+                    @ApiResponse(
+                        responseCode = "423",
+                        description = "Account locked"
+                    ),
+                    @ApiResponse(
+                        responseCode = "429",
+                        description = "Too many failed logins for this account or address"
                     )
             }
     )
     public ResponseEntity<JwtResponse> login(
            @Valid @RequestBody LoginRequest loginRequest, HttpServletRequest request) {
         try {
+            // Before the user lookup and BCrypt, so a brute-force run costs next to nothing once blocked
+            loginAttemptLimiter.checkAllowed(loginRequest.getUsername(), getClientIp(request));
             JwtResponse jwtResponse = authService.authenticateUser(loginRequest);
             eventPublisher.publishEvent(new AuthenticationEvent(
                     this, 
@@ -88,6 +101,16 @@ public class AuthController {
                     getClientIp(request)
             ));
             throw e;
+        } catch (LockedException e) {
+            // Not a LOGIN_FAILED: the password was never checked, so it must not count towards a new lock
+            eventPublisher.publishEvent(new AuthenticationEvent(
+                    this,
+                    loginRequest.getUsername(),
+                    AuthenticationEvent.AuthEventType.ACCOUNT_LOCKED,
+                    "Login rejected: " + e.getMessage(),
+                    getClientIp(request)
+            ));
+            throw e;
         }
     }
 
@@ -231,11 +254,8 @@ public class AuthController {
     }
 
     private String getClientIp(HttpServletRequest request) {
-        String xfHeader = request.getHeader("X-Forwarded-For");
-        // Check if the header is present and not empty
-        if (xfHeader == null) {
-            return request.getRemoteAddr();
-        }
-        return xfHeader.split(",")[0];
+        // X-Forwarded-For is only honoured from the trusted proxies in server.tomcat.remoteip.internal-proxies,
+        // Tomcat has already applied it to the remote address
+        return request.getRemoteAddr();
     }
 }
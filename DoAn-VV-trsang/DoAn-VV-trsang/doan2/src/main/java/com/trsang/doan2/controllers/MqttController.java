@@ -1,10 +1,12 @@
 package com.trsang.doan2.controllers;
 
+import com.trsang.doan2.dtos.mqtt.MqttCommandRequest;
 import com.trsang.doan2.dtos.mqtt.MqttCredentialsRequest;
 import com.trsang.doan2.dtos.mqtt.MqttCredentialsResponse;
 import com.trsang.doan2.dtos.responses.MessageResponse;
 import com.trsang.doan2.entities.Mqtt;
 import com.trsang.doan2.exceptions.RunTimeException;
+import com.trsang.doan2.exceptions.ServiceException;
 import com.trsang.doan2.services.interfaces.IMqttService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,6 +20,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @RestController
@@ -200,16 +203,91 @@ public class MqttController {
             @RequestParam String message,
             @RequestParam(defaultValue = "1") int qos) {
         try {
-            mqttService.publishMessage(topic, message, qos);
+            mqttService.publishMessage(topic, message, qos).join();
             return ResponseEntity.ok(MessageResponse.builder()
                     .message("Message published to topic: " + topic)
                     .success(true)
                     .build());
+        } catch (ServiceException e) {
+            return ResponseEntity.badRequest()
+                    .body(MessageResponse.builder()
+                            .message("Failed to publish message: " + e.getMessage())
+                            .success(false)
+                            .build());
         } catch (Exception e) {
-            log.error("Error publishing MQTT message: {}", e.getMessage(), e);
+            log.error("Error publishing MQTT message: {}", unwrap(e).getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(MessageResponse.builder()
-                            .message("Failed to publish message: " + e.getMessage())
+                            .message("Failed to publish message: " + unwrap(e).getMessage())
+                            .success(false)
+                            .build());
+        }
+    }
+
+    @PostMapping("/publish/nodes")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<MessageResponse> publishToNodes(@Valid @RequestBody MqttCommandRequest request) {
+        try {
+            List<String> failed = mqttService.publishToNodes(request.getNodes(), request.getMessage(), request.getQos())
+                    .join();
+            int published = request.getNodes().size() - failed.size();
+            return ResponseEntity.status(failed.isEmpty() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(MessageResponse.builder()
+                            .message("Command published to " + published + " of " + request.getNodes().size()
+                                    + " nodes" + (failed.isEmpty() ? "" : ", failed: " + failed))
+                            .success(failed.isEmpty())
+                            .build());
+        } catch (ServiceException e) {
+            return ResponseEntity.badRequest()
+                    .body(MessageResponse.builder()
+                            .message("Failed to publish command: " + e.getMessage())
+                            .success(false)
+                            .build());
+        } catch (Exception e) {
+            log.error("Error publishing MQTT command: {}", unwrap(e).getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(MessageResponse.builder()
+                            .message("Failed to publish command: " + unwrap(e).getMessage())
+                            .success(false)
+                            .build());
+        }
+    }
+
+    @PostMapping("/subscriptions")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<MessageResponse> subscribeTopic(
+            @RequestParam String topic,
+            @RequestParam(defaultValue = "1") int qos) {
+        try {
+            mqttService.subscribeTopic(topic, qos);
+            return ResponseEntity.ok(MessageResponse.builder()
+                    .message("Subscribed to topic: " + topic)
+                    .success(true)
+                    .build());
+        } catch (Exception e) {
+            log.error("Error subscribing to MQTT topic {}: {}", topic, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(MessageResponse.builder()
+                            .message("Failed to subscribe: " + e.getMessage())
+                            .success(false)
+                            .build());
+        }
+    }
+
+    @DeleteMapping("/subscriptions")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<MessageResponse> unsubscribeTopic(@RequestParam String topic) {
+        try {
+            mqttService.unsubscribeTopic(topic);
+            return ResponseEntity.ok(MessageResponse.builder()
+                    .message("Unsubscribed from topic: " + topic)
+                    .success(true)
+                    .build());
+        } catch (Exception e) {
+            log.error("Error unsubscribing from MQTT topic {}: {}", topic, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(MessageResponse.builder()
+                            .message("Failed to unsubscribe: " + e.getMessage())
                             .success(false)
                             .build());
         }
@@ -219,10 +297,14 @@ public class MqttController {
     @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
     public ResponseEntity<Map<String, Object>> getBrokerStatus() {
         try {
-            boolean isConnected = mqttService.isBrokerConnected();
-            
+            boolean publisherConnected = mqttService.isBrokerConnected();
+            boolean subscriberConnected = mqttService.isSubscriberConnected();
+            boolean isConnected = publisherConnected && subscriberConnected;
+
             Map<String, Object> status = new HashMap<>();
             status.put("isConnected", isConnected);
+            status.put("publisherConnected", publisherConnected);
+            status.put("subscriberConnected", subscriberConnected);
             status.put("status", isConnected ? "Connected" : "Disconnected");
             
             return ResponseEntity.ok(status);
@@ -231,4 +313,9 @@ public class MqttController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+
+    private static Throwable unwrap(Throwable e) {
+        // Publishes complete asynchronously, join() wraps the actual failure
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
 }
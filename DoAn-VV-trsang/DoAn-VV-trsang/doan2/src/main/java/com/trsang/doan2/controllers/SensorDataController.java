@@ -1,41 +1,34 @@
 package com.trsang.doan2.controllers;
 
+import com.trsang.doan2.dtos.SensorDataHistoryPage;
 import com.trsang.doan2.dtos.SensorDataResponse;
-import com.trsang.doan2.entities.SensorData;
-import com.trsang.doan2.repositories.ISensorDataRepository;
+import com.trsang.doan2.dtos.SensorDataRollupResponse;
+import com.trsang.doan2.services.interfaces.ILatestReadingRegistry;
+import com.trsang.doan2.services.interfaces.ISensorDataHistoryService;
+import com.trsang.doan2.services.interfaces.ISensorDataRollupService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/sensor-data")
 @RequiredArgsConstructor
 public class SensorDataController {
 
-        private final ISensorDataRepository sensorDataRepository;
-        private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE_TIME;
+        private final ILatestReadingRegistry latestReadingRegistry;
+        private final ISensorDataHistoryService sensorDataHistoryService;
+        private final ISensorDataRollupService sensorDataRollupService;
 
         @GetMapping("/latest")
         public ResponseEntity<Map<String, Object>> getLatestSensorData() {
-                List<SensorData> latestData = sensorDataRepository.findLatestByUser();
-
-                List<SensorDataResponse> response = latestData.stream()
-                                .map(data -> SensorDataResponse.builder()
-                                                .id(data.getId().toString())
-                                                .nodeName(data.getNodeName())
-                                                .latitude(data.getLatitude())
-                                                .longitude(data.getLongitude())
-                                                .distance(data.getDistance())
-                                                .gas(data.getGas())
-                                                .timestamp(data.getTimestamp().format(formatter))
-                                                .build())
-                                .collect(Collectors.toList());
+                // Served from memory, the registry is kept current by the ingest path
+                List<SensorDataResponse> response = latestReadingRegistry.getLatest();
 
                 Map<String, Object> result = new HashMap<>();
                 result.put("data", response);
@@ -43,20 +36,27 @@ public class SensorDataController {
         }
 
         @GetMapping("/history")
-        public ResponseEntity<Map<String, Object>> getSensorHistory() {
-                List<SensorData> history = sensorDataRepository.findTop100ByOrderByTimestampDesc();
+        public ResponseEntity<Map<String, Object>> getSensorHistory(
+                        @RequestParam(required = false) String node,
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                        @RequestParam(required = false) String cursor,
+                        @RequestParam(required = false) Integer limit) {
+                SensorDataHistoryPage page = sensorDataHistoryService.getHistory(node, from, to, cursor, limit);
+
+                Map<String, Object> result = new HashMap<>();
+                result.put("data", page.getData());
+                result.put("nextCursor", page.getNextCursor());
+                return ResponseEntity.ok(result);
+        }
 
-                List<SensorDataResponse> response = history.stream()
-                                .map(data -> SensorDataResponse.builder()
-                                                .id(data.getId().toString())
-                                                .nodeName(data.getNodeName())
-                                                .latitude(data.getLatitude())
-                                                .longitude(data.getLongitude())
-                                                .distance(data.getDistance())
-                                                .gas(data.getGas())
-                                                .timestamp(data.getTimestamp().format(formatter))
-                                                .build())
-                                .collect(Collectors.toList());
+        @GetMapping("/rollups")
+        public ResponseEntity<Map<String, Object>> getSensorRollups(
+                        @RequestParam(required = false) String node,
+                        @RequestParam(defaultValue = "HOUR") String resolution,
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+                List<SensorDataRollupResponse> response = sensorDataRollupService.getRollups(node, resolution, from, to);
 
                 Map<String, Object> result = new HashMap<>();
                 result.put("data", response);
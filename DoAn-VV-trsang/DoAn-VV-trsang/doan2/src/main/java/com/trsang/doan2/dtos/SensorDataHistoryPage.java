@@ -0,0 +1,18 @@
+package com.trsang.doan2.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorDataHistoryPage {
+    private List<SensorDataResponse> data;
+    // Opaque cursor for the next (older) page, null when there is none
+    private String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.trsang.doan2.dtos;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Projection of the sensor_data columns the history endpoint returns
+ */
+public record SensorDataHistoryRow(
+        UUID id,
+        String nodeName,
+        Double latitude,
+        Double longitude,
+        Double distance,
+        Integer gas,
+        LocalDateTime timestamp) {
+}
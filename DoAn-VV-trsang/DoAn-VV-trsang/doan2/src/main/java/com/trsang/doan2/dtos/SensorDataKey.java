@@ -0,0 +1,7 @@
+package com.trsang.doan2.dtos;
+
+/**
+ * Idempotency key of a reading: the node and the "t" counter it sent
+ */
+public record SensorDataKey(String nodeName, Long deviceTime) {
+}
@@ -0,0 +1,27 @@
+package com.trsang.doan2.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorDataRollupResponse {
+    private String nodeName;
+    private String resolution;
+    private String bucketStart;
+    private long count;
+    private double distanceMin;
+    private double distanceMax;
+    private double distanceAvg;
+    private int gasMin;
+    private int gasMax;
+    private double gasAvg;
+    private long tippingCount;
+    private Double lastLatitude;
+    private Double lastLongitude;
+    private String lastFixAt;
+}
@@ -0,0 +1,18 @@
+package com.trsang.doan2.dtos.admin;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FailedLoginStats {
+    private String ipAddress;
+    private Instant minute;
+    private long count;
+}
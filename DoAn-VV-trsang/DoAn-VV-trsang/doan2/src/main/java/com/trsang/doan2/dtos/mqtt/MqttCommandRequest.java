@@ -0,0 +1,29 @@
+package com.trsang.doan2.dtos.mqtt;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MqttCommandRequest {
+    @NotEmpty(message = "At least one node is required")
+    private List<String> nodes;
+
+    @NotBlank(message = "Message is required")
+    private String message;
+
+    @Builder.Default
+    @Min(0)
+    @Max(2)
+    private int qos = 1;
+}
@@ -0,0 +1,30 @@
+package com.trsang.doan2.dtos.mqtt;
+
+/**
+ * One telemetry frame as emitted by the ESP nodes:
+ * {"n":"node1","t":123,"ax":0.1,"ay":0.2,"az":9.8,"g":410,"trash":230,"lat":10.8,"lon":106.6,"sat":7}
+ */
+public record TelemetryReading(
+        String nodeName,
+        long deviceTime,
+        double ax,
+        double ay,
+        double az,
+        boolean hasAcceleration,
+        int gas,
+        double distance,
+        double latitude,
+        double longitude,
+        int satellites) {
+
+    public boolean isTipping() {
+        // Detect tipping based on accelerometer values
+        if (!hasAcceleration) {
+            return false;
+        }
+        double totalAcc = Math.sqrt(ax * ax + ay * ay + az * az);
+
+        // If z-axis is significantly less than total (not upright), might be tipping
+        return Math.abs(az) < totalAcc * 0.5;
+    }
+}
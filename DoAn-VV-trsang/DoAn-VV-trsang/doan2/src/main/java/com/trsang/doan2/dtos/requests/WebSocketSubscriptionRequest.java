@@ -0,0 +1,47 @@
+package com.trsang.doan2.dtos.requests;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Text frame sent by a /ws-plain client to change what it receives, e.g.
+ * {"type":"subscribe","topics":["smarttrash/+/data"],"nodes":["node1"],
+ * "boxes":[{"minLat":10.7,"minLon":106.6,"maxLat":10.9,"maxLon":106.8}]}
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebSocketSubscriptionRequest {
+    public static final String SUBSCRIBE = "subscribe";
+    public static final String UNSUBSCRIBE = "unsubscribe";
+
+    private String type;
+    private List<String> topics;
+    private List<String> nodes;
+    private List<GeoBox> boxes;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class GeoBox {
+        private double minLat;
+        private double minLon;
+        private double maxLat;
+        private double maxLon;
+
+        public boolean hasValidBounds() {
+            return minLat <= maxLat && minLon <= maxLon
+                    && minLat >= -90 && maxLat <= 90 && minLon >= -180 && maxLon <= 180;
+        }
+
+        public boolean contains(double latitude, double longitude) {
+            return latitude >= minLat && latitude <= maxLat && longitude >= minLon && longitude <= maxLon;
+        }
+    }
+}
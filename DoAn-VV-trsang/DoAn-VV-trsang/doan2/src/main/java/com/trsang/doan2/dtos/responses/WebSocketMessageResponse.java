@@ -1,5 +1,7 @@
 package com.trsang.doan2.dtos.responses;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,4 +15,7 @@ public class WebSocketMessageResponse {
     private String topic;
     private Object message;
     private String timestamp;
+    // Set when message only holds the fields that changed since the last state this client received
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean delta;
 }
@@ -0,0 +1,25 @@
+package com.trsang.doan2.dtos.responses;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebSocketSessionStats {
+    private String sessionId;
+    private String remoteAddress;
+    private int queuedFrames;
+    private long queuedBytes;
+    // Age of the oldest frame still waiting to be written
+    private long lagMs;
+    private long sentFrames;
+    // Negotiated subprotocol, empty for JSON clients that did not ask for one
+    private String protocol;
+    // False until the client sends its first subscribe; until then it receives everything
+    private boolean filtered;
+    private int subscriptions;
+}
@@ -0,0 +1,52 @@
+package com.trsang.doan2.entities;
+
+import com.trsang.doan2.entities.id.UuidV7;
+import com.trsang.doan2.events.AuthenticationEvent.AuthEventType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Audit trail row for an {@link com.trsang.doan2.events.AuthenticationEvent}, written in batches
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "auth_audit_events", indexes = {
+        @Index(name = "idx_auth_audit_occurred_at", columnList = "occurred_at"),
+        @Index(name = "idx_auth_audit_username", columnList = "username, occurred_at"),
+        @Index(name = "idx_auth_audit_ip", columnList = "ip_address, occurred_at")
+})
+public class AuthAuditEvent {
+
+    public static final int MESSAGE_LENGTH = 500;
+
+    @Id
+    @UuidV7
+    private UUID id;
+
+    @Column(length = 100)
+    private String username;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 32)
+    private AuthEventType eventType;
+
+    @Column(length = MESSAGE_LENGTH)
+    private String message;
+
+    @Column(name = "ip_address", length = 64)
+    private String ipAddress;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+}
@@ -1,5 +1,6 @@
 package com.trsang.doan2.entities;
 
+import com.trsang.doan2.entities.id.UuidV7;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -16,11 +17,18 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "sensor_data")
+@Table(name = "sensor_data", indexes = {
+        // InnoDB appends the primary key, so these also order the (timestamp, id) keyset
+        @Index(name = "idx_sensor_data_node_ts", columnList = "node_name, timestamp"),
+        @Index(name = "idx_sensor_data_ts", columnList = "timestamp"),
+        @Index(name = "idx_sensor_data_user", columnList = "user_id"),
+        // Not unique: "t" restarts when a node reboots, duplicates are only checked within a window
+        @Index(name = "idx_sensor_data_node_device_time", columnList = "node_name, device_time")
+})
 public class SensorData {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidV7
     private UUID id;
 
     @Builder.Default
@@ -34,6 +42,10 @@ public class SensorData {
     @Column(nullable = false, updatable = false)
     private LocalDateTime timestamp;
 
+    // Device "t" counter (millis since boot), part of the idempotency key
+    @Column(name = "device_time")
+    private Long deviceTime;
+
     @Column(nullable = false)
     private Double distance;
 
@@ -43,8 +55,9 @@ public class SensorData {
     @Column(name = "node_name", nullable = false, length = 50)
     private String nodeName;
 
+    // No database foreign key: MySQL cannot partition a table that has one
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "user_id", nullable = false)
+    @JoinColumn(name = "user_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private User user;
 
     @Column(name = "satellites", nullable = false)
@@ -58,7 +71,10 @@ public class SensorData {
 
     @PrePersist
     protected void onCreate() {
-        this.timestamp = LocalDateTime.now();
+        // Keep the receive time set by the ingest path, batches are written later
+        if (this.timestamp == null) {
+            this.timestamp = LocalDateTime.now();
+        }
     }
 
 }
@@ -0,0 +1,92 @@
+package com.trsang.doan2.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Per-node aggregate of sensor_data over one time bucket. Sums are stored
+ * instead of averages so buckets can be merged incrementally.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "sensor_data_rollup", indexes = {
+        // Hibernate orders the embedded key columns by name, so per-node reads get their own index
+        @Index(name = "idx_rollup_node_resolution_bucket", columnList = "node_name, resolution, bucket_start"),
+        @Index(name = "idx_rollup_resolution_bucket", columnList = "resolution, bucket_start")
+})
+public class SensorDataRollup {
+
+    @EmbeddedId
+    private SensorDataRollupId id;
+
+    @Column(name = "sample_count", nullable = false)
+    private long sampleCount;
+
+    @Column(name = "distance_min", nullable = false)
+    private double distanceMin;
+
+    @Column(name = "distance_max", nullable = false)
+    private double distanceMax;
+
+    @Column(name = "distance_sum", nullable = false)
+    private double distanceSum;
+
+    @Column(name = "gas_min", nullable = false)
+    private int gasMin;
+
+    @Column(name = "gas_max", nullable = false)
+    private int gasMax;
+
+    @Column(name = "gas_sum", nullable = false)
+    private long gasSum;
+
+    @Column(name = "tipping_count", nullable = false)
+    private long tippingCount;
+
+    // Latest reading in the bucket that had a satellite fix
+    @Column(name = "last_fix_at")
+    private LocalDateTime lastFixAt;
+
+    @Column(name = "last_latitude")
+    private Double lastLatitude;
+
+    @Column(name = "last_longitude")
+    private Double lastLongitude;
+
+    public enum Resolution {
+        MINUTE(ChronoUnit.MINUTES, Duration.ofDays(1)),
+        HOUR(ChronoUnit.HOURS, Duration.ofDays(30)),
+        DAY(ChronoUnit.DAYS, Duration.ofDays(365));
+
+        private final ChronoUnit unit;
+        private final Duration defaultWindow;
+
+        Resolution(ChronoUnit unit, Duration defaultWindow) {
+            this.unit = unit;
+            this.defaultWindow = defaultWindow;
+        }
+
+        public LocalDateTime bucketStart(LocalDateTime timestamp) {
+            return timestamp.truncatedTo(unit);
+        }
+
+        /**
+         * Range queried when the caller gives no "from"
+         */
+        public Duration getDefaultWindow() {
+            return defaultWindow;
+        }
+    }
+}
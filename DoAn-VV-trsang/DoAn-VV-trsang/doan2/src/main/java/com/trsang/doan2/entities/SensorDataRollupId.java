@@ -0,0 +1,31 @@
+package com.trsang.doan2.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class SensorDataRollupId implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Column(name = "node_name", nullable = false, length = 50)
+    private String nodeName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "resolution", nullable = false, length = 10)
+    private SensorDataRollup.Resolution resolution;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+}
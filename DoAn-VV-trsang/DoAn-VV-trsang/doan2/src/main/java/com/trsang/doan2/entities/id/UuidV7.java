@@ -0,0 +1,18 @@
+package com.trsang.doan2.entities.id;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+/**
+ * Generates time-ordered UUIDv7 identifiers (RFC 9562), so new rows land at the
+ * end of the primary key index instead of on a random page.
+ */
+@IdGeneratorType(UuidV7Generator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface UuidV7 {
+}
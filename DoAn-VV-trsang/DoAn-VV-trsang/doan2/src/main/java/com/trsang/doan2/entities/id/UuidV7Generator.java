@@ -0,0 +1,56 @@
+package com.trsang.doan2.entities.id;
+
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+/**
+ * UUIDv7: 48-bit Unix millisecond timestamp, version, 12-bit counter, variant,
+ * 62 random bits. The counter keeps ids from one JVM strictly increasing even
+ * within the same millisecond; when it overflows the timestamp part moves ahead.
+ */
+public class UuidV7Generator implements BeforeExecutionGenerator {
+    private static final long serialVersionUID = 1L;
+
+    // Last issued (millis << 12 | counter)
+    private static final AtomicLong lastTimeAndCounter = new AtomicLong();
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue,
+            EventType eventType) {
+        return next();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    /**
+     * Next id for the current time, ordered after every id this JVM issued before
+     */
+    public static UUID next() {
+        long now = System.currentTimeMillis() << 12;
+        long timeAndCounter = lastTimeAndCounter.updateAndGet(last -> Math.max(now, last + 1));
+        return build(timeAndCounter >>> 12, timeAndCounter & 0xFFF);
+    }
+
+    /**
+     * Id for a past instant, used when re-keying existing rows by their timestamp
+     */
+    public static UUID forTimestamp(long epochMillis) {
+        return build(epochMillis, ThreadLocalRandom.current().nextInt(0x1000));
+    }
+
+    private static UUID build(long epochMillis, long counter) {
+        long msb = (epochMillis & 0xFFFFFFFFFFFFL) << 16 | 0x7000L | counter;
+        long lsb = ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+}
@@ -1,10 +1,12 @@
 package com.trsang.doan2.exceptions;
 
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -65,6 +67,41 @@ public class GlobalExceptionHandler {
         );
     }
 
+    @ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<ErrorResponse> handleLoginThrottledException(LoginThrottledException ex, HttpServletRequest request) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ErrorResponse(
+                        ex.getMessage(),
+                        request.getRequestURI(),
+                        HttpStatus.TOO_MANY_REQUESTS.value(),
+                        new Date()));
+    }
+
+    @ExceptionHandler(LockedException.class)
+    @ResponseStatus(HttpStatus.LOCKED)
+    public ErrorResponse handleLockedException(LockedException ex, HttpServletRequest request) {
+        log.warn("Tài khoản đang bị khóa: {}", ex.getMessage());
+        return new ErrorResponse(
+                ex.getMessage(),
+                request.getRequestURI(),
+                HttpStatus.LOCKED.value(),
+                new Date()
+        );
+    }
+
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<ErrorResponse> handlePasswordHashingBusyException(PasswordHashingBusyException ex, HttpServletRequest request) {
+        log.warn("Password hashing pool saturated: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorResponse(
+                        ex.getMessage(),
+                        request.getRequestURI(),
+                        HttpStatus.SERVICE_UNAVAILABLE.value(),
+                        new Date()));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Object> handleGlobalException(Exception ex, HttpServletRequest request, WebRequest webRequest) {
         log.error("Không thể xử lý: {}", ex);
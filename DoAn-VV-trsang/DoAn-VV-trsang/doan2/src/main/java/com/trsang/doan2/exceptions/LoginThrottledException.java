@@ -0,0 +1,21 @@
+package com.trsang.doan2.exceptions;
+
+import org.springframework.security.authentication.LockedException;
+
+/**
+ * Too many failed logins for a username or from an IP; rejected before the password is checked
+ */
+public class LoginThrottledException extends LockedException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public LoginThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
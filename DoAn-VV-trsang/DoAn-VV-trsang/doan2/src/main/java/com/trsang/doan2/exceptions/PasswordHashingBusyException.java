@@ -0,0 +1,16 @@
+package com.trsang.doan2.exceptions;
+
+/**
+ * The password hashing pool is saturated; the caller should retry later (503)
+ */
+public class PasswordHashingBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
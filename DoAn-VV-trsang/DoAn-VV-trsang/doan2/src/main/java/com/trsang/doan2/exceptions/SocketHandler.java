@@ -2,16 +2,21 @@ package com.trsang.doan2.exceptions;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
+import java.util.List;
+
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
+import com.trsang.doan2.services.implementation.TelemetryFrameEncoder;
 import com.trsang.doan2.services.interfaces.ISocketService;
 
 @Component
 @RequiredArgsConstructor
-public class SocketHandler implements WebSocketHandler {
+public class SocketHandler implements WebSocketHandler, SubProtocolCapable {
 
     private final ISocketService socketService;
 
@@ -22,7 +27,10 @@ public class SocketHandler implements WebSocketHandler {
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
-        // Not implemented
+        // Clients only send subscribe/unsubscribe frames
+        if (message instanceof TextMessage text) {
+            socketService.handleClientMessage(session, text.getPayload());
+        }
     }
 
     @Override
@@ -35,6 +43,12 @@ public class SocketHandler implements WebSocketHandler {
         socketService.removeSession(session);
     }
 
+    @Override
+    public List<String> getSubProtocols() {
+        // Clients that ask for no subprotocol get JSON, as before
+        return List.of(TelemetryFrameEncoder.PROTOCOL_BINARY, TelemetryFrameEncoder.PROTOCOL_JSON);
+    }
+
     @Override
     public boolean supportsPartialMessages() {
         return false;
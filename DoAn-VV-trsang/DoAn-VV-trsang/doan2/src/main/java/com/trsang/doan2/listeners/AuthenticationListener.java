@@ -4,43 +4,21 @@ import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import com.trsang.doan2.events.AuthenticationEvent;
+import com.trsang.doan2.services.interfaces.IAuthAuditService;
 
-import lombok.extern.slf4j.Slf4j;
+import lombok.RequiredArgsConstructor;
 
-@Slf4j
 @Component
+@RequiredArgsConstructor
 public class AuthenticationListener {
+    private final IAuthAuditService authAuditService;
+
+    /**
+     * Runs on the publishing request thread, so it only hands the event over;
+     * logging and persistence happen on the audit writer thread
+     */
     @EventListener
     public void handleAuthenticationEvent(AuthenticationEvent event) {
-        switch (event.getEventType()) {
-            case LOGIN_SUCCESS:
-                log.info("User {} logged in successfully from IP {}", 
-                            event.getUsername(), event.getIpAddress());
-                break;
-            case LOGIN_FAILED:
-                log.warn("Failed login attempt for user {} from IP {} reason {}", 
-                            event.getUsername(), event.getIpAddress(), event.getMessage());
-                break;
-            case LOGOUT:
-                log.info("User {} logged out from IP {}", 
-                            event.getUsername(), event.getIpAddress());
-                break;
-            case REGISTER_SUCCESS:
-                log.info("User {} registered successfully from IP {}",
-                            event.getUsername(), event.getIpAddress());
-                break;
-            case REFRESH_TOKEN:
-                log.info("Token refreshed for user {} from IP {}", 
-                            event.getUsername(), event.getIpAddress());
-                break;
-            case INVALID_TOKEN:
-                log.warn("Invalid token for user {} from IP {} reason {}", 
-                            event.getUsername(), event.getIpAddress(), event.getMessage());
-                break;
-            case ACCOUNT_LOCKED:
-                log.warn("Account locked for user {} from IP {} reason {}", 
-                            event.getUsername(), event.getIpAddress(), event.getMessage());
-                break;
-        }
+        authAuditService.record(event);
     }
 }
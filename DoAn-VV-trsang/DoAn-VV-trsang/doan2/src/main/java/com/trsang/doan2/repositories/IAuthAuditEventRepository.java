@@ -0,0 +1,20 @@
+package com.trsang.doan2.repositories;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.trsang.doan2.entities.AuthAuditEvent;
+
+@Repository
+public interface IAuthAuditEventRepository extends JpaRepository<AuthAuditEvent, UUID> {
+
+    @Modifying
+    @Query("DELETE FROM AuthAuditEvent a WHERE a.occurredAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") Instant cutoff);
+}
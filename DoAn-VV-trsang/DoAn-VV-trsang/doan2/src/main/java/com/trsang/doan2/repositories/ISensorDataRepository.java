@@ -1,10 +1,17 @@
 package com.trsang.doan2.repositories;
 
+import com.trsang.doan2.dtos.SensorDataHistoryRow;
+import com.trsang.doan2.dtos.SensorDataKey;
 import com.trsang.doan2.entities.SensorData;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -14,13 +21,88 @@ public interface ISensorDataRepository extends JpaRepository<SensorData, UUID> {
     @Query(value = """
             SELECT sd.* FROM sensor_data sd
             INNER JOIN (
-                SELECT user_id, MAX(timestamp) as max_timestamp
+                SELECT node_name, MAX(timestamp) as max_timestamp
                 FROM sensor_data
-                GROUP BY user_id
-            ) latest ON sd.user_id = latest.user_id AND sd.timestamp = latest.max_timestamp
-            ORDER BY sd.timestamp DESC
+                GROUP BY node_name
+            ) latest ON sd.node_name = latest.node_name AND sd.timestamp = latest.max_timestamp
             """, nativeQuery = true)
-    List<SensorData> findLatestByUser();
+    List<SensorData> findLatestByNode();
 
-    List<SensorData> findTop100ByOrderByTimestampDesc();
+    // Same as findLatestByNode over the rows from `since` on, a range scan of idx_sensor_data_ts
+    @Query(value = """
+            SELECT sd.* FROM sensor_data sd
+            INNER JOIN (
+                SELECT node_name, MAX(timestamp) as max_timestamp
+                FROM sensor_data
+                WHERE timestamp >= :since
+                GROUP BY node_name
+            ) latest ON sd.node_name = latest.node_name AND sd.timestamp = latest.max_timestamp
+            """, nativeQuery = true)
+    List<SensorData> findLatestByNodeSince(@Param("since") LocalDateTime since);
+
+    // Keyset pages: rows strictly older than (beforeTimestamp, beforeId), the id breaks timestamp ties
+    @Query("""
+            SELECT new com.trsang.doan2.dtos.SensorDataHistoryRow(
+                s.id, s.nodeName, s.latitude, s.longitude, s.distance, s.gas, s.timestamp)
+            FROM SensorData s
+            WHERE s.nodeName = :nodeName
+              AND s.timestamp >= :from
+              AND s.timestamp <= :beforeTimestamp
+              AND (s.timestamp < :beforeTimestamp OR s.id < :beforeId)
+            ORDER BY s.timestamp DESC, s.id DESC
+            """)
+    List<SensorDataHistoryRow> findHistoryPageByNode(@Param("nodeName") String nodeName,
+            @Param("from") LocalDateTime from,
+            @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+            @Param("beforeId") UUID beforeId,
+            Limit limit);
+
+    @Query("""
+            SELECT new com.trsang.doan2.dtos.SensorDataHistoryRow(
+                s.id, s.nodeName, s.latitude, s.longitude, s.distance, s.gas, s.timestamp)
+            FROM SensorData s
+            WHERE s.timestamp >= :from
+              AND s.timestamp <= :beforeTimestamp
+              AND (s.timestamp < :beforeTimestamp OR s.id < :beforeId)
+            ORDER BY s.timestamp DESC, s.id DESC
+            """)
+    List<SensorDataHistoryRow> findHistoryPage(@Param("from") LocalDateTime from,
+            @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+            @Param("beforeId") UUID beforeId,
+            Limit limit);
+
+    @Query("""
+            SELECT new com.trsang.doan2.dtos.SensorDataKey(s.nodeName, s.deviceTime)
+            FROM SensorData s
+            WHERE s.timestamp >= :since AND s.nodeName IN :nodeNames AND s.deviceTime IN :deviceTimes
+            """)
+    List<SensorDataKey> findKeysSince(@Param("since") LocalDateTime since,
+            @Param("nodeNames") Collection<String> nodeNames,
+            @Param("deviceTimes") Collection<Long> deviceTimes);
+
+    @Query("SELECT MIN(s.timestamp) FROM SensorData s")
+    LocalDateTime findOldestTimestamp();
+
+    @Query("""
+            SELECT s.nodeName, COUNT(s) FROM SensorData s
+            WHERE s.timestamp >= :from AND s.timestamp < :to
+            GROUP BY s.nodeName
+            """)
+    List<Object[]> countByNodeBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("""
+            SELECT s FROM SensorData s
+            WHERE s.nodeName = :nodeName AND s.timestamp >= :from AND s.timestamp < :to
+            """)
+    List<SensorData> findByNodeBetween(@Param("nodeName") String nodeName,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to);
+
+    @Query("SELECT s.id FROM SensorData s WHERE s.timestamp < :before ORDER BY s.timestamp")
+    List<UUID> findIdsOlderThan(@Param("before") LocalDateTime before, Limit limit);
+
+    // The timestamp bound lets a partitioned table prune to the months being purged
+    @Modifying
+    @Query("DELETE FROM SensorData s WHERE s.id IN :ids AND s.timestamp < :before")
+    int deleteByIds(@Param("ids") List<UUID> ids, @Param("before") LocalDateTime before);
 }
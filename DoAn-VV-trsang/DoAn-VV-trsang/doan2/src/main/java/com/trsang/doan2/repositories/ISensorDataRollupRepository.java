@@ -0,0 +1,68 @@
+package com.trsang.doan2.repositories;
+
+import com.trsang.doan2.entities.SensorDataRollup;
+import com.trsang.doan2.entities.SensorDataRollupId;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ISensorDataRollupRepository extends JpaRepository<SensorDataRollup, SensorDataRollupId> {
+
+    @Query("""
+            SELECT r FROM SensorDataRollup r
+            WHERE r.id.nodeName = :nodeName
+              AND r.id.resolution = :resolution
+              AND r.id.bucketStart >= :from
+              AND r.id.bucketStart < :to
+            ORDER BY r.id.bucketStart
+            """)
+    List<SensorDataRollup> findByNode(@Param("nodeName") String nodeName,
+            @Param("resolution") SensorDataRollup.Resolution resolution,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to,
+            Limit limit);
+
+    @Query("""
+            SELECT r FROM SensorDataRollup r
+            WHERE r.id.resolution = :resolution
+              AND r.id.bucketStart >= :from
+              AND r.id.bucketStart < :to
+            ORDER BY r.id.bucketStart, r.id.nodeName
+            """)
+    List<SensorDataRollup> findAllNodes(@Param("resolution") SensorDataRollup.Resolution resolution,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to,
+            Limit limit);
+
+    @Query("""
+            SELECT r.id.nodeName, SUM(r.sampleCount) FROM SensorDataRollup r
+            WHERE r.id.resolution = :resolution
+              AND r.id.bucketStart >= :from AND r.id.bucketStart < :to
+            GROUP BY r.id.nodeName
+            """)
+    List<Object[]> sumCountByNodeBetween(@Param("resolution") SensorDataRollup.Resolution resolution,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Query("""
+            DELETE FROM SensorDataRollup r
+            WHERE r.id.nodeName = :nodeName
+              AND r.id.bucketStart >= :from AND r.id.bucketStart < :to
+            """)
+    int deleteByNodeBetween(@Param("nodeName") String nodeName,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Query("DELETE FROM SensorDataRollup r WHERE r.id.resolution = :resolution AND r.id.bucketStart < :before")
+    int deleteOlderThan(@Param("resolution") SensorDataRollup.Resolution resolution,
+            @Param("before") LocalDateTime before);
+}
@@ -4,17 +4,31 @@ import org.springframework.stereotype.Repository;
 
 import com.trsang.doan2.entities.User;
 
+import java.time.Instant;
 import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 @Repository
 public interface IUserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByEmail(String email);
     Optional<User> findByUsername(String username);
+
+    @Query("SELECT u.id FROM User u WHERE u.username = :username")
+    Optional<UUID> findIdByUsername(@Param("username") String username);
+
+    // Only ever extends a lock, so an admin's longer lock is kept
+    @Modifying
+    @Query("UPDATE User u SET u.lockedUntil = :until WHERE u.username = :username "
+            + "AND (u.lockedUntil IS NULL OR u.lockedUntil < :until)")
+    int extendLockedUntil(@Param("username") String username, @Param("until") Instant until);
+
     boolean existsByEmail(String email);
     boolean existsByUsername(String username);
 
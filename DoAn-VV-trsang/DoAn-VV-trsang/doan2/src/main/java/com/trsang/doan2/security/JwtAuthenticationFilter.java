@@ -1,6 +1,7 @@
 package com.trsang.doan2.security;
 
 import java.io.IOException;
+import java.util.Optional;
 
 import org.springframework.lang.NonNull;
 import org.springframework.security.core.Authentication;
@@ -31,10 +32,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
         try {
             String jwt = parseJwt(request);
-            if (jwt != null && tokenService.validateToken(jwt)) {
-                // Get authentication directly from token service instead of using userDetailsService
-                Authentication authentication = tokenService.getAuthentication(jwt);
-                SecurityContextHolder.getContext().setAuthentication(authentication);
+            if (jwt != null) {
+                // One parse verifies the token and yields the authentication, no userDetailsService lookup
+                Optional<Authentication> authentication = tokenService.authenticate(jwt);
+                authentication.ifPresent(auth -> SecurityContextHolder.getContext().setAuthentication(auth));
             }
         } catch (Exception e) {
             log.error("Cannot set user authentication: {}", e.getMessage());
@@ -0,0 +1,117 @@
+package com.trsang.doan2.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.trsang.doan2.exceptions.PasswordHashingBusyException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * BCrypt on a small dedicated pool. Hashing is CPU bound, so at most {@code threads}
+ * hashes run at once whatever the number of request threads; callers still wait for
+ * their result, but only {@code queueCapacity} of them can be parked in the queue; the
+ * rest are rejected straight away instead of holding Tomcat threads the telemetry APIs need.
+ */
+@Slf4j
+public class PooledPasswordEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+
+    private final BCryptPasswordEncoder delegate;
+    private final int strength;
+    private final long waitTimeoutMs;
+    private final ThreadPoolExecutor executor;
+
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedCounter;
+
+    public PooledPasswordEncoder(int strength, int threads, int queueCapacity, long waitTimeoutMs,
+            MeterRegistry meterRegistry) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.waitTimeoutMs = waitTimeoutMs;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hash-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("auth.password.hash.queue", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("auth.password.hash.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        this.encodeTimer = Timer.builder("auth.password.hash").tag("op", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder("auth.password.hash").tag("op", "matches").register(meterRegistry);
+        this.rejectedCounter = meterRegistry.counter("auth.password.hash.rejected");
+
+        log.info("Password hashing: BCrypt cost {}, {} threads, queue {}", strength, threads, queueCapacity);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> encodeTimer.record(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    /**
+     * True when the stored hash was made with a different cost than the configured one,
+     * so a successful login rehashes it (in either direction, unlike BCryptPasswordEncoder)
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new PasswordHashingBusyException("Too many password requests in progress, try again shortly");
+        }
+
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            rejectedCounter.increment();
+            throw new PasswordHashingBusyException("Password hashing timed out, try again shortly");
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
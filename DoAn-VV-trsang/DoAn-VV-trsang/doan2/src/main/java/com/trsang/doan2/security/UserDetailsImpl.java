@@ -1,5 +1,6 @@
 package com.trsang.doan2.security;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
@@ -31,6 +32,9 @@ public class UserDetailsImpl implements UserDetails{
     
     private Collection<? extends GrantedAuthority> authorities;
 
+    @JsonIgnore
+    private Instant lockedUntil;
+
     public static UserDetailsImpl build(User user) {
         List<GrantedAuthority> authorities = user.getRoles().stream()
                 .map(role -> new SimpleGrantedAuthority(role.getName()))
@@ -42,6 +46,7 @@ public class UserDetailsImpl implements UserDetails{
                 .email(user.getEmail())
                 .password(user.getPassword())
                 .authorities(authorities)
+                .lockedUntil(user.getLockedUntil())
                 .build();
     }
 
@@ -52,7 +57,8 @@ public class UserDetailsImpl implements UserDetails{
 
     @Override
     public boolean isAccountNonLocked() {
-        return true;
+        // Checked by the authentication provider before the password, so a locked account costs no BCrypt
+        return lockedUntil == null || !lockedUntil.isAfter(Instant.now());
     }
 
     @Override
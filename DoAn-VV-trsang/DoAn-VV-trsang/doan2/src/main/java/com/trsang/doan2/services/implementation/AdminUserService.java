@@ -23,6 +23,9 @@ import com.trsang.doan2.repositories.IRefreshTokenRepository;
 import com.trsang.doan2.repositories.IRoleRepository;
 import com.trsang.doan2.repositories.IUserRepository;
 import com.trsang.doan2.services.interfaces.IAdminUserService;
+import com.trsang.doan2.services.interfaces.ILoginAttemptLimiter;
+import com.trsang.doan2.services.interfaces.INodeUserCache;
+import com.trsang.doan2.services.interfaces.IVerifiedTokenCache;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -35,6 +38,9 @@ public class AdminUserService implements IAdminUserService {
     private final IRoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
     private final IRefreshTokenRepository refreshTokenRepository;
+    private final INodeUserCache nodeUserCache;
+    private final IVerifiedTokenCache verifiedTokenCache;
+    private final ILoginAttemptLimiter loginAttemptLimiter;
 
     @Override
     @Transactional(readOnly = true)
@@ -81,9 +87,12 @@ public class AdminUserService implements IAdminUserService {
 
             if (request.getLockedUntil() != null) {
                 user.setLockedUntil(request.getLockedUntil());
+                // An admin decision replaces whatever the brute-force limiter counted so far
+                loginAttemptLimiter.reset(user.getUsername());
             }
 
             userRepository.save(user);
+            verifiedTokenCache.invalidateUser(user.getUsername());
 
             String statusMessage = Boolean.TRUE.equals(request.getIsActive()) ? "Kích hoạt" : "Vô hiệu hóa";
             return MessageResponse.builder()
@@ -115,6 +124,8 @@ public class AdminUserService implements IAdminUserService {
 
             refreshTokenRepository.deleteByUser(user);
             userRepository.delete(user);
+            nodeUserCache.invalidate(user.getUsername());
+            verifiedTokenCache.invalidateUser(user.getUsername());
 
             return MessageResponse.builder()
                     .message("User deleted successfully.")
@@ -172,6 +183,7 @@ public class AdminUserService implements IAdminUserService {
         user.setRoles(roles);
 
         User savedUser = userRepository.save(user);
+        nodeUserCache.invalidate(savedUser.getUsername());
 
         log.info("User created successfully with id: {}", savedUser.getId());
         return mapToUserAdminResponse(savedUser);
@@ -205,6 +217,7 @@ public class AdminUserService implements IAdminUserService {
         }
 
         User updatedUser = userRepository.save(user);
+        nodeUserCache.invalidate(updatedUser.getUsername());
 
         log.info("User updated successfully with id: {}", updatedUser.getId());
         return mapToUserAdminResponse(updatedUser);
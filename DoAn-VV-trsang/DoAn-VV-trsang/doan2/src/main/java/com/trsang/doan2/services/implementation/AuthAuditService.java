@@ -0,0 +1,230 @@
+package com.trsang.doan2.services.implementation;
+
+import com.trsang.doan2.dtos.admin.FailedLoginStats;
+import com.trsang.doan2.entities.AuthAuditEvent;
+import com.trsang.doan2.events.AuthenticationEvent;
+import com.trsang.doan2.events.AuthenticationEvent.AuthEventType;
+import com.trsang.doan2.repositories.IAuthAuditEventRepository;
+import com.trsang.doan2.services.interfaces.IAuthAuditService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Audit trail for authentication events. The publishing request thread only
+ * bumps the per-IP failure counter and offers the event to a bounded queue;
+ * a background thread logs the events and inserts them in batches, so a slow
+ * database never adds latency to /api/auth/login. When the queue is full the
+ * event is dropped and counted rather than blocking the request.
+ */
+@Slf4j
+@Service
+public class AuthAuditService implements IAuthAuditService {
+
+    private static final long MINUTE_MS = 60_000L;
+    // Failures from IPs past the per-minute cap are folded into this bucket
+    private static final String OTHER_IPS = "other";
+
+    private final IAuthAuditEventRepository auditRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BatchingWriter<AuthAuditEvent> writer;
+    private final int retentionDays;
+    private final int failedLoginWindowMinutes;
+    private final int maxIpsPerMinute;
+
+    // Minute index (epoch millis / 60000) -> IP -> failed logins in that minute
+    private final Map<Long, Map<String, LongAdder>> failedLoginsByMinute = new ConcurrentHashMap<>();
+
+    private final Map<AuthEventType, Counter> eventCounters = new EnumMap<>(AuthEventType.class);
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+
+    public AuthAuditService(
+            IAuthAuditEventRepository auditRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.security.audit.capacity:10000}") int capacity,
+            @Value("${app.security.audit.batch-size:200}") int batchSize,
+            @Value("${app.security.audit.max-latency-ms:1000}") long maxLatencyMs,
+            @Value("${app.security.audit.shutdown-timeout-ms:5000}") long shutdownTimeoutMs,
+            @Value("${app.security.audit.retention-days:90}") int retentionDays,
+            @Value("${app.security.audit.failed-login-window-minutes:15}") int failedLoginWindowMinutes,
+            @Value("${app.security.audit.max-ips-per-minute:10000}") int maxIpsPerMinute) {
+        this.auditRepository = auditRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writer = new BatchingWriter<>("auth-audit-writer", capacity, batchSize, maxLatencyMs,
+                shutdownTimeoutMs, this::writeBatch);
+        this.retentionDays = retentionDays;
+        this.failedLoginWindowMinutes = failedLoginWindowMinutes;
+        this.maxIpsPerMinute = maxIpsPerMinute;
+
+        for (AuthEventType type : AuthEventType.values()) {
+            eventCounters.put(type, meterRegistry.counter("auth.events", "type", type.name()));
+        }
+        Gauge.builder("auth.audit.queue.size", writer, BatchingWriter::size)
+                .description("Authentication events waiting to be stored")
+                .register(meterRegistry);
+        this.writtenCounter = meterRegistry.counter("auth.audit.written");
+        this.droppedCounter = meterRegistry.counter("auth.audit.dropped");
+        this.failedCounter = meterRegistry.counter("auth.audit.failed");
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        writer.stop();
+    }
+
+    @Override
+    public boolean record(AuthenticationEvent event) {
+        eventCounters.get(event.getEventType()).increment();
+        if (event.getEventType() == AuthEventType.LOGIN_FAILED) {
+            countFailedLogin(event.getIpAddress(), event.getTimestamp());
+        }
+
+        AuthAuditEvent row = AuthAuditEvent.builder()
+                .username(event.getUsername())
+                .eventType(event.getEventType())
+                .message(truncate(event.getMessage()))
+                .ipAddress(event.getIpAddress())
+                .occurredAt(Instant.ofEpochMilli(event.getTimestamp()))
+                .build();
+        if (writer.offer(row)) {
+            return true;
+        }
+        droppedCounter.increment();
+        log.warn("Auth audit buffer full, dropping {} event for user {}", event.getEventType(), event.getUsername());
+        return false;
+    }
+
+    @Override
+    public List<FailedLoginStats> getFailedLoginsPerIp(int minutes) {
+        long currentMinute = System.currentTimeMillis() / MINUTE_MS;
+        long firstMinute = currentMinute - Math.min(Math.max(minutes, 1), failedLoginWindowMinutes) + 1;
+
+        List<FailedLoginStats> stats = new ArrayList<>();
+        failedLoginsByMinute.forEach((minute, perIp) -> {
+            if (minute < firstMinute) {
+                return;
+            }
+            Instant minuteStart = Instant.ofEpochMilli(minute * MINUTE_MS);
+            perIp.forEach((ip, count) -> stats.add(FailedLoginStats.builder()
+                    .ipAddress(ip)
+                    .minute(minuteStart)
+                    .count(count.sum())
+                    .build()));
+        });
+        stats.sort(Comparator.comparingLong(FailedLoginStats::getCount).reversed()
+                .thenComparing(FailedLoginStats::getMinute, Comparator.reverseOrder()));
+        return stats;
+    }
+
+    @Override
+    public void purgeExpired() {
+        Instant cutoff = Instant.now().minus(Duration.ofDays(retentionDays));
+        Integer deleted = transactionTemplate.execute(status -> auditRepository.deleteOlderThan(cutoff));
+        if (deleted != null && deleted > 0) {
+            log.info("Purged {} auth audit events older than {} days", deleted, retentionDays);
+        }
+    }
+
+    private void countFailedLogin(String ipAddress, long timestampMs) {
+        long minute = timestampMs / MINUTE_MS;
+        Map<String, LongAdder> perIp = failedLoginsByMinute.get(minute);
+        if (perIp == null) {
+            // A new minute started, minutes past the window are not needed anymore
+            pruneFailedLogins();
+            perIp = failedLoginsByMinute.computeIfAbsent(minute, m -> new ConcurrentHashMap<>());
+        }
+        String key = ipAddress != null ? ipAddress : "unknown";
+        // Bounded per minute so a spray from many addresses cannot grow the map without limit
+        if (perIp.size() >= maxIpsPerMinute && !perIp.containsKey(key)) {
+            key = OTHER_IPS;
+        }
+        perIp.computeIfAbsent(key, ip -> new LongAdder()).increment();
+    }
+
+    private void pruneFailedLogins() {
+        long oldestKept = System.currentTimeMillis() / MINUTE_MS - failedLoginWindowMinutes;
+        failedLoginsByMinute.keySet().removeIf(minute -> minute < oldestKept);
+    }
+
+    private void writeBatch(List<AuthAuditEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.forEach(this::logEvent);
+        try {
+            // UUIDv7 ids are assigned in memory, so Hibernate groups these into JDBC batches
+            transactionTemplate.executeWithoutResult(status -> auditRepository.saveAll(batch));
+            writtenCounter.increment(batch.size());
+        } catch (Exception e) {
+            // The audit trail is best effort, a failed batch is logged above and not retried
+            failedCounter.increment(batch.size());
+            log.error("Failed to store {} auth audit events: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void logEvent(AuthAuditEvent event) {
+        switch (event.getEventType()) {
+            case LOGIN_SUCCESS:
+                log.info("User {} logged in successfully from IP {}",
+                            event.getUsername(), event.getIpAddress());
+                break;
+            case LOGIN_FAILED:
+                log.warn("Failed login attempt for user {} from IP {} reason {}",
+                            event.getUsername(), event.getIpAddress(), event.getMessage());
+                break;
+            case LOGOUT:
+                log.info("User {} logged out from IP {}",
+                            event.getUsername(), event.getIpAddress());
+                break;
+            case REGISTER_SUCCESS:
+                log.info("User {} registered successfully from IP {}",
+                            event.getUsername(), event.getIpAddress());
+                break;
+            case REFRESH_TOKEN:
+                log.info("Token refreshed for user {} from IP {}",
+                            event.getUsername(), event.getIpAddress());
+                break;
+            case INVALID_TOKEN:
+                log.warn("Invalid token for user {} from IP {} reason {}",
+                            event.getUsername(), event.getIpAddress(), event.getMessage());
+                break;
+            case ACCOUNT_LOCKED:
+                log.warn("Account locked for user {} from IP {} reason {}",
+                            event.getUsername(), event.getIpAddress(), event.getMessage());
+                break;
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null || message.length() <= AuthAuditEvent.MESSAGE_LENGTH) {
+            return message;
+        }
+        return message.substring(0, AuthAuditEvent.MESSAGE_LENGTH);
+    }
+}
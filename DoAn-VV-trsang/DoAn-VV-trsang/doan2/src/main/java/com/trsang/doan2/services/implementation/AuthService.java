@@ -29,6 +29,7 @@ import com.trsang.doan2.repositories.IRoleRepository;
 import com.trsang.doan2.repositories.IUserRepository;
 import com.trsang.doan2.security.UserDetailsImpl;
 import com.trsang.doan2.services.interfaces.IAuthService;
+import com.trsang.doan2.services.interfaces.INodeUserCache;
 import com.trsang.doan2.services.interfaces.IRefreshTokenService;
 import com.trsang.doan2.services.interfaces.ITokenService;
 
@@ -43,6 +44,7 @@ public class AuthService implements IAuthService {
     private final IRefreshTokenService refreshTokenService;
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
+    private final INodeUserCache nodeUserCache;
 
     public AuthService(
             IUserRepository userRepository, 
@@ -50,13 +52,15 @@ public class AuthService implements IAuthService {
             ITokenService tokenService,
             IRefreshTokenService refreshTokenService,
             PasswordEncoder passwordEncoder,
-            AuthenticationManager authenticationManager) {
+            AuthenticationManager authenticationManager,
+            INodeUserCache nodeUserCache) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.tokenService = tokenService;
         this.refreshTokenService = refreshTokenService;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
+        this.nodeUserCache = nodeUserCache;
     }
 
     @Override
@@ -213,6 +217,8 @@ public class AuthService implements IAuthService {
         }
         user.setRoles(roles);
         userRepository.save(user);
+        // A node may already be cached as unknown under this username
+        nodeUserCache.invalidate(user.getUsername());
         log.info("User registered successfully: {}", user.getUsername());
 
         return MessageResponse.builder()
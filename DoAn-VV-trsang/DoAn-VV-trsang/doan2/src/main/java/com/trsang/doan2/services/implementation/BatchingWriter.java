@@ -0,0 +1,129 @@
+package com.trsang.doan2.services.implementation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue drained by one background thread into batches of at most
+ * {@code batchSize} items. A batch is handed to the sink once it is full or
+ * its oldest item has waited {@code maxLatencyMs}. The sink runs on the writer
+ * thread and is expected to handle its own failures.
+ */
+@Slf4j
+public class BatchingWriter<T> {
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int batchSize;
+    private final long maxLatencyMs;
+    private final long shutdownTimeoutMs;
+    private final Consumer<List<T>> sink;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public BatchingWriter(String name, int capacity, int batchSize, long maxLatencyMs, long shutdownTimeoutMs,
+                          Consumer<List<T>> sink) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxLatencyMs = maxLatencyMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.sink = sink;
+    }
+
+    public void start() {
+        running = true;
+        writer = new Thread(this::runLoop, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Waits for the writer to empty the queue, then writes whatever it could not finish in time
+     */
+    public void stop() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(shutdownTimeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    public boolean offer(T item) {
+        return queue.offer(item);
+    }
+
+    public boolean offer(T item, long timeoutMs) throws InterruptedException {
+        return queue.offer(item, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes everything queued so far on the calling thread
+     */
+    public void flush() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            sink.accept(batch);
+            batch.clear();
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public int remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    private void runLoop() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(maxLatencyMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Keep filling until the batch is full or the oldest item hits the latency bound
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                sink.accept(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!batch.isEmpty()) {
+                    sink.accept(batch);
+                }
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error in {}: {}", name, e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.trsang.doan2.services.implementation;
+
+import com.trsang.doan2.dtos.SensorDataKey;
+import com.trsang.doan2.entities.SensorData;
+import com.trsang.doan2.repositories.ISensorDataRepository;
+import com.trsang.doan2.services.interfaces.IIngestDeduplicator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Drops QoS 1 redeliveries of the same telemetry frame. A frame is identified
+ * by its node and the device "t" counter. That counter is millis() since boot,
+ * so it restarts after a reboot and a key is only unique for a short window:
+ * <ul>
+ * <li>each node keeps its recently seen keys in memory, bounded by age and
+ * count, which catches redeliveries before they reach the write buffer;</li>
+ * <li>each batch is checked against rows stored within the same window through
+ * the (node_name, device_time) index, which catches redeliveries that went to
+ * another instance of a shared subscription or arrived after a restart.</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class IngestDeduplicator implements IIngestDeduplicator {
+
+    private final ISensorDataRepository sensorDataRepository;
+    private final boolean enabled;
+    private final boolean databaseCheck;
+    private final long windowMs;
+    private final int maxKeysPerNode;
+    private final int maxNodes;
+
+    private final Map<String, RecentKeys> recentKeys = new ConcurrentHashMap<>();
+    private final Counter memoryDuplicateCounter;
+    private final Counter databaseDuplicateCounter;
+
+    public IngestDeduplicator(
+            ISensorDataRepository sensorDataRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.ingest.dedup.enabled:true}") boolean enabled,
+            @Value("${app.ingest.dedup.database-check:true}") boolean databaseCheck,
+            @Value("${app.ingest.dedup.window-ms:600000}") long windowMs,
+            @Value("${app.ingest.dedup.max-keys-per-node:1024}") int maxKeysPerNode,
+            @Value("${app.ingest.dedup.max-nodes:10000}") int maxNodes) {
+        this.sensorDataRepository = sensorDataRepository;
+        this.enabled = enabled;
+        this.databaseCheck = databaseCheck;
+        this.windowMs = windowMs;
+        this.maxKeysPerNode = maxKeysPerNode;
+        this.maxNodes = maxNodes;
+
+        Gauge.builder("ingest.dedup.nodes", recentKeys, Map::size)
+                .description("Nodes with recent idempotency keys in memory")
+                .register(meterRegistry);
+        this.memoryDuplicateCounter = meterRegistry.counter("ingest.dedup.duplicates", "source", "memory");
+        this.databaseDuplicateCounter = meterRegistry.counter("ingest.dedup.duplicates", "source", "database");
+    }
+
+    @Override
+    public boolean markIfNew(String nodeName, long deviceTime) {
+        if (!enabled) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        RecentKeys keys = recentKeys.get(nodeName);
+        if (keys == null) {
+            if (recentKeys.size() >= maxNodes) {
+                evictIdleNodes(now);
+            }
+            keys = recentKeys.computeIfAbsent(nodeName, name -> new RecentKeys());
+        }
+        if (keys.markIfNew(deviceTime, now)) {
+            return true;
+        }
+        memoryDuplicateCounter.increment();
+        log.debug("Dropping duplicate reading from node {} (t={})", nodeName, deviceTime);
+        return false;
+    }
+
+    @Override
+    public void forget(String nodeName, long deviceTime) {
+        RecentKeys keys = recentKeys.get(nodeName);
+        if (keys != null) {
+            keys.forget(deviceTime);
+        }
+    }
+
+    @Override
+    public List<SensorData> dropPersisted(List<SensorData> batch) {
+        if (!enabled || !databaseCheck) {
+            return batch;
+        }
+
+        Set<String> nodeNames = new HashSet<>();
+        Set<Long> deviceTimes = new HashSet<>();
+        LocalDateTime oldest = null;
+        for (SensorData data : batch) {
+            if (data.getDeviceTime() == null) {
+                continue;
+            }
+            nodeNames.add(data.getNodeName());
+            deviceTimes.add(data.getDeviceTime());
+            if (oldest == null || data.getTimestamp().isBefore(oldest)) {
+                oldest = data.getTimestamp();
+            }
+        }
+        if (oldest == null) {
+            return batch;
+        }
+
+        // The query matches the cross product of nodes and times, the exact pairs are checked below
+        Set<SensorDataKey> seen = new HashSet<>(sensorDataRepository.findKeysSince(
+                oldest.minusNanos(windowMs * 1_000_000L), nodeNames, deviceTimes));
+        List<SensorData> unique = new ArrayList<>(batch.size());
+        for (SensorData data : batch) {
+            if (data.getDeviceTime() == null || seen.add(new SensorDataKey(data.getNodeName(), data.getDeviceTime()))) {
+                unique.add(data);
+            }
+        }
+        int dropped = batch.size() - unique.size();
+        if (dropped > 0) {
+            databaseDuplicateCounter.increment(dropped);
+            log.debug("Dropped {} already stored readings from a batch of {}", dropped, batch.size());
+        }
+        return unique;
+    }
+
+    private void evictIdleNodes(long now) {
+        recentKeys.values().removeIf(keys -> keys.isIdle(now));
+        if (recentKeys.size() >= maxNodes) {
+            log.warn("Idempotency window still tracks {} nodes after eviction, clearing it", recentKeys.size());
+            recentKeys.clear();
+        }
+    }
+
+    /**
+     * Keys of one node in arrival order, so the oldest are always at the head
+     */
+    private final class RecentKeys {
+        private final LinkedHashMap<Long, Long> seenAt = new LinkedHashMap<>();
+        private volatile long lastSeenAt;
+
+        synchronized boolean markIfNew(long deviceTime, long now) {
+            expire(now);
+            if (seenAt.putIfAbsent(deviceTime, now) != null) {
+                return false;
+            }
+            lastSeenAt = now;
+            if (seenAt.size() > maxKeysPerNode) {
+                Iterator<Long> eldest = seenAt.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            return true;
+        }
+
+        synchronized void forget(long deviceTime) {
+            seenAt.remove(deviceTime);
+        }
+
+        boolean isIdle(long now) {
+            return now - lastSeenAt > windowMs;
+        }
+
+        private void expire(long now) {
+            Iterator<Long> times = seenAt.values().iterator();
+            while (times.hasNext() && now - times.next() > windowMs) {
+                times.remove();
+            }
+        }
+    }
+}
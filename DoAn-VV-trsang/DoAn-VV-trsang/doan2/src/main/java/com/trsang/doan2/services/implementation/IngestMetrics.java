@@ -0,0 +1,132 @@
+package com.trsang.doan2.services.implementation;
+
+import com.trsang.doan2.entities.SensorData;
+import com.trsang.doan2.services.interfaces.IIngestMetrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest pipeline meters that are tagged per node or per stage. Node tags are
+ * capped so a misbehaving device publishing under random names cannot grow the
+ * number of series without bound; past the cap everything counts as "other".
+ * <p>
+ * The device "t" is millis() since boot, not wall-clock time, so it cannot be
+ * subtracted from the receive time directly. Instead each node keeps the
+ * smallest (receive - t) seen since it booted; a reading's delay above that
+ * minimum is how much longer than the fastest delivery it took to arrive.
+ */
+@Service
+public class IngestMetrics implements IIngestMetrics {
+
+    private static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final int maxTaggedNodes;
+
+    private final Map<String, Counter> receivedCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> parseFailureCounters = new ConcurrentHashMap<>();
+    private final Map<String, DeviceClock> deviceClocks = new ConcurrentHashMap<>();
+    private final Timer deviceDelayTimer;
+    private final Timer commitLatencyTimer;
+
+    public IngestMetrics(
+            MeterRegistry meterRegistry,
+            @Value("${app.metrics.ingest.max-tagged-nodes:500}") int maxTaggedNodes) {
+        this.meterRegistry = meterRegistry;
+        this.maxTaggedNodes = maxTaggedNodes;
+
+        this.deviceDelayTimer = Timer.builder("ingest.latency")
+                .tag("stage", "device")
+                .description("Delivery delay above the fastest one seen since the node booted")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.commitLatencyTimer = Timer.builder("ingest.latency")
+                .tag("stage", "commit")
+                .description("Time from receiving a reading to committing it to the database")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void messageReceived(String topic) {
+        // Topic format: smarttrash/{node}/{type}
+        String[] parts = topic != null ? topic.split("/") : new String[0];
+        String node = parts.length > 2 ? parts[1] : OTHER;
+        String type = parts.length > 2 ? parts[parts.length - 1] : OTHER;
+        String key = node + "/" + type;
+
+        Counter counter = receivedCounters.get(key);
+        if (counter == null) {
+            if (receivedCounters.size() >= maxTaggedNodes) {
+                key = OTHER + "/" + type;
+                node = OTHER;
+            }
+            String nodeTag = node;
+            String typeTag = type;
+            counter = receivedCounters.computeIfAbsent(key, k -> Counter.builder("mqtt.messages.received")
+                    .tag("node", nodeTag)
+                    .tag("type", typeTag)
+                    .register(meterRegistry));
+        }
+        counter.increment();
+    }
+
+    @Override
+    public void parseFailed(String stage) {
+        parseFailureCounters.computeIfAbsent(stage, s -> meterRegistry.counter("ingest.parse.failures", "stage", s))
+                .increment();
+    }
+
+    @Override
+    public void readingReceived(String nodeName, long deviceTime, long receivedAtMs) {
+        if (deviceTime <= 0) {
+            return;
+        }
+        DeviceClock clock = deviceClocks.get(nodeName);
+        if (clock == null) {
+            if (deviceClocks.size() >= maxTaggedNodes) {
+                return;
+            }
+            clock = deviceClocks.computeIfAbsent(nodeName, name -> new DeviceClock());
+        }
+        long delayMs = clock.delayAboveMinimum(deviceTime, receivedAtMs);
+        deviceDelayTimer.record(delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void readingsCommitted(List<SensorData> readings) {
+        LocalDateTime now = LocalDateTime.now();
+        for (SensorData reading : readings) {
+            if (reading.getTimestamp() != null) {
+                commitLatencyTimer.record(Duration.between(reading.getTimestamp(), now));
+            }
+        }
+    }
+
+    private static final class DeviceClock {
+        private long lastDeviceTime = -1;
+        private long minOffset = Long.MAX_VALUE;
+
+        synchronized long delayAboveMinimum(long deviceTime, long receivedAtMs) {
+            if (deviceTime < lastDeviceTime) {
+                // millis() went backwards: the node rebooted or the counter wrapped
+                minOffset = Long.MAX_VALUE;
+            }
+            lastDeviceTime = deviceTime;
+            long offset = receivedAtMs - deviceTime;
+            minOffset = Math.min(minOffset, offset);
+            return offset - minOffset;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.trsang.doan2.services.implementation;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.trsang.doan2.dtos.SensorDataResponse;
+import com.trsang.doan2.entities.SensorData;
+import com.trsang.doan2.repositories.ISensorDataRepository;
+import com.trsang.doan2.services.interfaces.ILatestReadingRegistry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Latest reading per node, kept in memory so /api/sensor-data/latest does not
+ * have to group the whole sensor_data table on every dashboard poll.
+ * Updated by the sensor data writer after each committed batch.
+ */
+@Slf4j
+@Service
+public class LatestReadingRegistry implements ILatestReadingRegistry {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE_TIME;
+
+    private final ISensorDataRepository sensorDataRepository;
+    private final Map<String, LatestReading> latestByNode = new ConcurrentHashMap<>();
+    private final Counter mismatchCounter;
+
+    public LatestReadingRegistry(ISensorDataRepository sensorDataRepository, MeterRegistry meterRegistry) {
+        this.sensorDataRepository = sensorDataRepository;
+        Gauge.builder("sensor.latest.nodes", latestByNode, Map::size)
+                .description("Nodes tracked by the latest reading registry")
+                .register(meterRegistry);
+        this.mismatchCounter = meterRegistry.counter("sensor.latest.mismatches");
+    }
+
+    @Override
+    public void updateAll(List<SensorData> readings) {
+        for (SensorData data : readings) {
+            LatestReading reading = new LatestReading(data.getTimestamp(), toResponse(data));
+            latestByNode.merge(data.getNodeName(), reading, LatestReading::newer);
+        }
+    }
+
+    @Override
+    public List<SensorDataResponse> getLatest() {
+        return latestByNode.values().stream()
+                .sorted(Comparator.comparing(LatestReading::timestamp).reversed())
+                .map(LatestReading::response)
+                .toList();
+    }
+
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            List<SensorData> latest = sensorDataRepository.findLatestByNode();
+            updateAll(latest);
+            log.info("Latest reading registry warmed up with {} nodes", latestByNode.size());
+        } catch (Exception e) {
+            log.error("Could not warm up latest reading registry: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int reconcile() {
+        LocalDateTime checkStartedAt = LocalDateTime.now();
+        // Every tracked node's latest row is at or after the oldest cached reading, so only that
+        // range is grouped; a tracked node missing from it has lost its rows. Whole seconds, since
+        // the column may store the cached timestamp rounded down
+        LocalDateTime since = latestByNode.values().stream()
+                .map(LatestReading::timestamp)
+                .min(Comparator.naturalOrder())
+                .map(oldest -> oldest.truncatedTo(ChronoUnit.SECONDS))
+                .orElse(null);
+        List<SensorData> latest = since != null
+                ? sensorDataRepository.findLatestByNodeSince(since)
+                : sensorDataRepository.findLatestByNode();
+        Map<String, SensorData> fromDb = new HashMap<>();
+        for (SensorData data : latest) {
+            fromDb.merge(data.getNodeName(), data,
+                    (a, b) -> a.getTimestamp().isAfter(b.getTimestamp()) ? a : b);
+        }
+
+        int mismatches = 0;
+        for (SensorData data : fromDb.values()) {
+            LatestReading cached = latestByNode.get(data.getNodeName());
+            // A cached reading newer than the database is a batch committed after the query ran; the
+            // column keeps microseconds, so the same reading can come back rounded up by less than one
+            if (cached == null || cached.timestamp().plus(1, ChronoUnit.MICROS).isBefore(data.getTimestamp())) {
+                mismatches++;
+                latestByNode.merge(data.getNodeName(),
+                        new LatestReading(data.getTimestamp(), toResponse(data)), LatestReading::newer);
+            }
+        }
+        for (Map.Entry<String, LatestReading> entry : latestByNode.entrySet()) {
+            // Nodes whose rows are gone (user deleted, retention) are dropped
+            if (!fromDb.containsKey(entry.getKey()) && entry.getValue().timestamp().isBefore(checkStartedAt)) {
+                mismatches++;
+                latestByNode.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (mismatches > 0) {
+            mismatchCounter.increment(mismatches);
+            log.warn("Latest reading registry differed from database for {} nodes, repaired", mismatches);
+        }
+        return mismatches;
+    }
+
+    private SensorDataResponse toResponse(SensorData data) {
+        return SensorDataResponse.builder()
+                .id(String.valueOf(data.getId()))
+                .nodeName(data.getNodeName())
+                .latitude(data.getLatitude())
+                .longitude(data.getLongitude())
+                .distance(data.getDistance())
+                .gas(data.getGas())
+                .timestamp(data.getTimestamp().format(formatter))
+                .build();
+    }
+
+    private record LatestReading(LocalDateTime timestamp, SensorDataResponse response) {
+        private static LatestReading newer(LatestReading current, LatestReading candidate) {
+            return candidate.timestamp().isBefore(current.timestamp()) ? current : candidate;
+        }
+    }
+}
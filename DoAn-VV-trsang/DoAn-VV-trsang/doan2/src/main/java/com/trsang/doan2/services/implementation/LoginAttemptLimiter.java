@@ -0,0 +1,270 @@
+package com.trsang.doan2.services.implementation;
+
+import com.trsang.doan2.events.AuthenticationEvent;
+import com.trsang.doan2.exceptions.LoginThrottledException;
+import com.trsang.doan2.repositories.IUserRepository;
+import com.trsang.doan2.services.interfaces.ILoginAttemptLimiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Brute-force limiter fed by LOGIN_FAILED events. Failures are counted per
+ * username and per IP in a sliding window of fixed buckets; once a threshold
+ * trips, further logins for that key are rejected by {@link #checkAllowed}
+ * before any user lookup or BCrypt, and a username trip also sets
+ * {@code User.lockedUntil} so the lock holds on every instance and across restarts.
+ */
+@Slf4j
+@Service
+public class LoginAttemptLimiter implements ILoginAttemptLimiter {
+
+    private final IUserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long bucketMs;
+    private final int buckets;
+    private final long windowMs;
+    private final int maxFailuresPerUsername;
+    private final int maxFailuresPerIp;
+    private final long lockDurationMs;
+    private final int maxTrackedKeys;
+
+    private final Map<String, FailureWindow> usernames = new ConcurrentHashMap<>();
+    private final Map<String, FailureWindow> ips = new ConcurrentHashMap<>();
+
+    private final Counter blockedUsernameCounter;
+    private final Counter blockedIpCounter;
+    private final Counter lockedCounter;
+
+    public LoginAttemptLimiter(
+            IUserRepository userRepository,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.security.login-limiter.enabled:true}") boolean enabled,
+            @Value("${app.security.login-limiter.window-ms:900000}") long windowMs,
+            @Value("${app.security.login-limiter.buckets:15}") int buckets,
+            @Value("${app.security.login-limiter.max-failures-per-username:5}") int maxFailuresPerUsername,
+            @Value("${app.security.login-limiter.max-failures-per-ip:50}") int maxFailuresPerIp,
+            @Value("${app.security.login-limiter.lock-duration-ms:900000}") long lockDurationMs,
+            @Value("${app.security.login-limiter.max-tracked-keys:100000}") int maxTrackedKeys) {
+        this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.buckets = buckets;
+        this.bucketMs = Math.max(1, windowMs / buckets);
+        this.windowMs = bucketMs * buckets;
+        this.maxFailuresPerUsername = maxFailuresPerUsername;
+        this.maxFailuresPerIp = maxFailuresPerIp;
+        this.lockDurationMs = lockDurationMs;
+        this.maxTrackedKeys = maxTrackedKeys;
+
+        Gauge.builder("auth.login.limiter.tracked", usernames, Map::size).tag("scope", "username").register(meterRegistry);
+        Gauge.builder("auth.login.limiter.tracked", ips, Map::size).tag("scope", "ip").register(meterRegistry);
+        this.blockedUsernameCounter = meterRegistry.counter("auth.login.limiter.blocked", "scope", "username");
+        this.blockedIpCounter = meterRegistry.counter("auth.login.limiter.blocked", "scope", "ip");
+        this.lockedCounter = meterRegistry.counter("auth.login.limiter.locked");
+    }
+
+    @Override
+    public void checkAllowed(String username, String ipAddress) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long ipBlockedFor = remainingBlock(ips, ipAddress, now);
+        if (ipBlockedFor > 0) {
+            blockedIpCounter.increment();
+            throw new LoginThrottledException("Too many failed logins from this address, try again later",
+                    toSeconds(ipBlockedFor));
+        }
+        long userBlockedFor = remainingBlock(usernames, normalize(username), now);
+        if (userBlockedFor > 0) {
+            blockedUsernameCounter.increment();
+            throw new LoginThrottledException("Too many failed logins for this account, try again later",
+                    toSeconds(userBlockedFor));
+        }
+    }
+
+    @Override
+    public void reset(String username) {
+        String key = normalize(username);
+        if (key != null) {
+            usernames.remove(key);
+        }
+    }
+
+    @EventListener
+    public void onAuthenticationEvent(AuthenticationEvent event) {
+        if (!enabled) {
+            return;
+        }
+        switch (event.getEventType()) {
+            case LOGIN_FAILED -> recordFailure(normalize(event.getUsername()), event.getIpAddress());
+            // A successful login clears the username's failures, the IP keeps its count
+            case LOGIN_SUCCESS -> reset(event.getUsername());
+            default -> {
+            }
+        }
+    }
+
+    private void recordFailure(String username, String ipAddress) {
+        long now = System.currentTimeMillis();
+        if (ipAddress != null && trip(ips, ipAddress, maxFailuresPerIp, now)) {
+            log.warn("Blocking logins from IP {} for {} ms after {} failures", ipAddress, lockDurationMs, maxFailuresPerIp);
+        }
+        if (username != null && trip(usernames, username, maxFailuresPerUsername, now)) {
+            lockAccount(username, ipAddress, now);
+        }
+    }
+
+    /**
+     * Counts one failure, returns true only for the failure that starts a block
+     */
+    private boolean trip(Map<String, FailureWindow> windows, String key, int threshold, long now) {
+        FailureWindow window = windows.get(key);
+        if (window == null) {
+            if (windows.size() >= maxTrackedKeys) {
+                evict(windows, now);
+            }
+            window = windows.computeIfAbsent(key, k -> new FailureWindow(buckets));
+        }
+        if (window.blockedUntil.get() > now) {
+            // Attempts made while blocked never reach the password check, they do not extend the block
+            return false;
+        }
+        long bucket = now / bucketMs;
+        if (window.increment(bucket) < threshold) {
+            return false;
+        }
+        long blockedUntil = now + lockDurationMs;
+        long previous = window.blockedUntil.get();
+        if (previous <= now && window.blockedUntil.compareAndSet(previous, blockedUntil)) {
+            // Start the next window from zero once the block ends
+            window.clear();
+            return true;
+        }
+        return false;
+    }
+
+    private void lockAccount(String username, String ipAddress, long now) {
+        Instant lockedUntil = Instant.ofEpochMilli(now + lockDurationMs);
+        try {
+            Integer updated = transactionTemplate.execute(status -> userRepository.extendLockedUntil(username, lockedUntil));
+            if (updated == null || updated == 0) {
+                // Unknown username (or already locked longer): the in-memory block is enough
+                return;
+            }
+        } catch (Exception e) {
+            log.error("Could not persist lock for user {}: {}", username, e.getMessage());
+            return;
+        }
+        lockedCounter.increment();
+        eventPublisher.publishEvent(new AuthenticationEvent(
+                this,
+                username,
+                AuthenticationEvent.AuthEventType.ACCOUNT_LOCKED,
+                maxFailuresPerUsername + " failed logins within " + windowMs / 1000 + "s, locked until " + lockedUntil,
+                ipAddress
+        ));
+    }
+
+    private long remainingBlock(Map<String, FailureWindow> windows, String key, long now) {
+        if (key == null) {
+            return 0;
+        }
+        FailureWindow window = windows.get(key);
+        return window != null ? window.blockedUntil.get() - now : 0;
+    }
+
+    private void evict(Map<String, FailureWindow> windows, long now) {
+        long currentBucket = now / bucketMs;
+        windows.values().removeIf(window -> window.blockedUntil.get() <= now
+                && window.lastBucket.get() <= currentBucket - buckets);
+        if (windows.size() >= maxTrackedKeys) {
+            // Still full of recent failures: keep the blocked keys, they are the ones that matter
+            log.warn("Login limiter still tracks {} keys after eviction, dropping the unblocked ones", windows.size());
+            windows.values().removeIf(window -> window.blockedUntil.get() <= now);
+        }
+    }
+
+    private static String normalize(String username) {
+        // MySQL compares usernames case-insensitively, so "Admin" must share admin's counter
+        return username != null ? username.trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static long toSeconds(long millis) {
+        return Math.max(1, (millis + 999) / 1000);
+    }
+
+    /**
+     * Ring of per-bucket failure counts. Each slot packs the bucket number (high bits)
+     * and its count (low 24 bits) into one long, so a slot is reused for a newer bucket
+     * and incremented with a single CAS, without locks.
+     */
+    static final class FailureWindow {
+        private static final int COUNT_BITS = 24;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+        private final AtomicLongArray slots;
+        private final AtomicLong lastBucket = new AtomicLong();
+        private final AtomicLong blockedUntil = new AtomicLong();
+
+        FailureWindow(int buckets) {
+            this.slots = new AtomicLongArray(buckets);
+        }
+
+        /**
+         * Adds one failure to the bucket and returns the total over the window
+         */
+        long increment(long bucket) {
+            int slot = (int) Math.floorMod(bucket, (long) slots.length());
+            long current;
+            long updated;
+            do {
+                current = slots.get(slot);
+                long count = (current >>> COUNT_BITS) == bucket ? current & COUNT_MASK : 0;
+                updated = (bucket << COUNT_BITS) | Math.min(count + 1, COUNT_MASK);
+            } while (!slots.compareAndSet(slot, current, updated));
+            lastBucket.accumulateAndGet(bucket, Math::max);
+            return sum(bucket);
+        }
+
+        long sum(long bucket) {
+            long oldest = bucket - slots.length() + 1;
+            long total = 0;
+            for (int i = 0; i < slots.length(); i++) {
+                long value = slots.get(i);
+                long slotBucket = value >>> COUNT_BITS;
+                if (slotBucket >= oldest && slotBucket <= bucket) {
+                    total += value & COUNT_MASK;
+                }
+            }
+            return total;
+        }
+
+        void clear() {
+            for (int i = 0; i < slots.length(); i++) {
+                slots.set(i, 0);
+            }
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.trsang.doan2.services.implementation;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
 import com.trsang.doan2.entities.SensorData;
-import com.trsang.doan2.entities.User;
-import com.trsang.doan2.repositories.ISensorDataRepository;
 import com.trsang.doan2.repositories.IUserRepository;
+import com.trsang.doan2.services.interfaces.IIngestDeduplicator;
+import com.trsang.doan2.services.interfaces.IIngestMetrics;
+import com.trsang.doan2.services.interfaces.INodeUserCache;
+import com.trsang.doan2.services.interfaces.ISensorDataWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.integration.annotation.ServiceActivator;
@@ -13,70 +14,95 @@ import org.springframework.integration.mqtt.support.MqttHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.UUID;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MqttDataSaver {
 
-    private final ISensorDataRepository sensorDataRepository;
+    private final ISensorDataWriter sensorDataWriter;
     private final IUserRepository userRepository;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final INodeUserCache nodeUserCache;
+    private final TelemetryParser telemetryParser;
+    private final IIngestDeduplicator ingestDeduplicator;
+    private final IIngestMetrics ingestMetrics;
 
-    @ServiceActivator(inputChannel = "mqttInputChannel")
+    @ServiceActivator(inputChannel = "mqttTelemetryChannel")
     public void saveSensorData(Message<?> message) {
         try {
             String topic = (String) message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC);
 
             // Handle payload - can be String or byte[]
-            String payload;
+            byte[] payload;
             Object payloadObj = message.getPayload();
-            if (payloadObj instanceof String) {
-                payload = (String) payloadObj;
-            } else if (payloadObj instanceof byte[]) {
-                payload = new String((byte[]) payloadObj);
+            if (payloadObj instanceof byte[] bytes) {
+                payload = bytes;
+            } else if (payloadObj instanceof String text) {
+                payload = text.getBytes(StandardCharsets.UTF_8);
             } else {
                 log.warn("Unknown payload type: {}", payloadObj.getClass());
                 return;
             }
 
-            log.info("Received MQTT message on topic {}: {}", topic, payload);
+            log.debug("Received MQTT message on topic {} ({} bytes)", topic, payload.length);
 
             // Parse JSON payload
-            JsonNode jsonNode = objectMapper.readTree(payload);
+            TelemetryReading reading;
+            try {
+                reading = telemetryParser.parse(payload);
+            } catch (IOException e) {
+                ingestMetrics.parseFailed("saver");
+                log.warn("Could not parse telemetry on topic {}: {}", topic, e.getMessage());
+                return;
+            }
 
             // Extract node name from topic or payload
-            String nodeName = jsonNode.has("n") ? jsonNode.get("n").asText() : extractNodeFromTopic(topic);
-
-            // Find user by username (node name maps to username)
-            Optional<User> userOpt = userRepository.findByUsername(nodeName);
-            if (userOpt.isEmpty()) {
-                // Try admin as default user
-                userOpt = userRepository.findByUsername("admin");
-                if (userOpt.isEmpty()) {
-                    log.warn("No user found for node {}, skipping data save", nodeName);
-                    return;
-                }
+            String nodeName = reading.nodeName() != null ? reading.nodeName() : extractNodeFromTopic(topic);
+
+            Long receivedAt = message.getHeaders().getTimestamp();
+            ingestMetrics.readingReceived(nodeName, reading.deviceTime(),
+                    receivedAt != null ? receivedAt : System.currentTimeMillis());
+
+            // QoS 1 may deliver a frame more than once, frames without "t" cannot be matched
+            long deviceTime = reading.deviceTime();
+            boolean keyed = deviceTime > 0;
+            if (keyed && !ingestDeduplicator.markIfNew(nodeName, deviceTime)) {
+                return;
             }
 
-            User user = userOpt.get();
+            // Resolve the owning user from cache (node name maps to username, admin as fallback)
+            Optional<UUID> userId = nodeUserCache.resolveUserId(nodeName);
+            if (userId.isEmpty()) {
+                log.warn("No user found for node {}, skipping data save", nodeName);
+                return;
+            }
 
-            // Map JSON fields to SensorData entity
+            // Map telemetry fields to SensorData entity
             SensorData sensorData = SensorData.builder()
-                    .user(user)
+                    .user(userRepository.getReferenceById(userId.get()))
                     .nodeName(nodeName)
-                    .distance(jsonNode.has("trash") ? jsonNode.get("trash").asDouble() : 0.0)
-                    .gas(jsonNode.has("g") ? jsonNode.get("g").asInt() : 0)
+                    .deviceTime(keyed ? deviceTime : null)
+                    .distance(reading.distance())
+                    .gas(reading.gas())
                     .isDetectedHuman(false) // Not in current data format
-                    .isTipping(detectTipping(jsonNode))
-                    .latitude(jsonNode.has("lat") ? jsonNode.get("lat").asDouble() : 0.0)
-                    .longitude(jsonNode.has("lon") ? jsonNode.get("lon").asDouble() : 0.0)
-                    .satellites(jsonNode.has("sat") ? jsonNode.get("sat").asInt() : 0)
+                    .isTipping(reading.isTipping())
+                    .latitude(reading.latitude())
+                    .longitude(reading.longitude())
+                    .satellites(reading.satellites())
+                    .timestamp(LocalDateTime.now())
                     .build();
 
-            sensorDataRepository.save(sensorData);
-            log.info("Saved sensor data for node {} to database", nodeName);
+            if (sensorDataWriter.enqueue(sensorData)) {
+                log.debug("Queued sensor data for node {}", nodeName);
+            } else if (keyed) {
+                // Not stored, so a redelivery must not be treated as a duplicate
+                ingestDeduplicator.forget(nodeName, deviceTime);
+            }
 
         } catch (Exception e) {
             log.error("Error processing MQTT message: {}", e.getMessage(), e);
@@ -93,20 +119,4 @@ public class MqttDataSaver {
         }
         return "unknown";
     }
-
-    private boolean detectTipping(JsonNode jsonNode) {
-        // Detect tipping based on accelerometer values
-        if (jsonNode.has("ax") && jsonNode.has("ay") && jsonNode.has("az")) {
-            double ax = jsonNode.get("ax").asDouble();
-            double ay = jsonNode.get("ay").asDouble();
-            double az = jsonNode.get("az").asDouble();
-
-            // Calculate total acceleration
-            double totalAcc = Math.sqrt(ax * ax + ay * ay + az * az);
-
-            // If z-axis is significantly less than total (not upright), might be tipping
-            return Math.abs(az) < totalAcc * 0.5;
-        }
-        return false;
-    }
 }
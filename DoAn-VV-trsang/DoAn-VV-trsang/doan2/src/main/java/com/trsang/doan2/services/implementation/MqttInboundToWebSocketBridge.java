@@ -1,28 +1,61 @@
 package com.trsang.doan2.services.implementation;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.mqtt.support.MqttHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
-import com.trsang.doan2.services.interfaces.ISocketService;
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+import com.trsang.doan2.services.interfaces.IIngestMetrics;
+import com.trsang.doan2.services.interfaces.ITelemetryConflator;
+
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @Service
 public class MqttInboundToWebSocketBridge {
 
-    private final ISocketService socketService;
+    private final ITelemetryConflator telemetryConflator;
+    private final TelemetryParser telemetryParser;
+    private final IIngestMetrics ingestMetrics;
 
-    public MqttInboundToWebSocketBridge(ISocketService socketService) {
-        this.socketService = socketService;
+    public MqttInboundToWebSocketBridge(ITelemetryConflator telemetryConflator, TelemetryParser telemetryParser,
+            IIngestMetrics ingestMetrics) {
+        this.telemetryConflator = telemetryConflator;
+        this.telemetryParser = telemetryParser;
+        this.ingestMetrics = ingestMetrics;
     }
 
-    @ServiceActivator(inputChannel = "mqttInputChannel")
+    @ServiceActivator(inputChannel = "mqttTelemetryChannel")
     public void handleMqttMessage(Message<?> message) {
         String topic = (String) message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC);
         Object payload = message.getPayload();
+        byte[] raw = payload instanceof byte[] bytes ? bytes
+                : payload instanceof String text ? text.getBytes(StandardCharsets.UTF_8) : null;
+        if (payload instanceof byte[] bytes) {
+            // Keep forwarding the JSON text rather than a base64 encoded byte array
+            payload = new String(bytes, StandardCharsets.UTF_8);
+        }
 
         if (topic != null) {
-            socketService.sendMessage(topic, payload);
+            // Only parsed when some client subscribed by geo box
+            telemetryConflator.submit(topic, payload, () -> parsePosition(raw));
+        }
+    }
+
+    private TelemetryReading parsePosition(byte[] raw) {
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return telemetryParser.parse(raw);
+        } catch (IOException e) {
+            ingestMetrics.parseFailed("bridge");
+            log.debug("Could not parse telemetry position: {}", e.getMessage());
+            return null;
         }
     }
 
@@ -1,25 +1,185 @@
 package com.trsang.doan2.services.implementation;
 
+import com.trsang.doan2.config.SharedSubscriptionInboundAdapter;
 import com.trsang.doan2.entities.Mqtt;
+import com.trsang.doan2.exceptions.RunTimeException;
+import com.trsang.doan2.exceptions.ServiceException;
 import com.trsang.doan2.repositories.IMqttRepository;
 import com.trsang.doan2.services.interfaces.IMqttService;
-import lombok.RequiredArgsConstructor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.core.MessageProducer;
+import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
+import org.springframework.integration.mqtt.event.MqttConnectionFailedEvent;
+import org.springframework.integration.mqtt.event.MqttSubscribedEvent;
+import org.springframework.integration.mqtt.inbound.AbstractMqttMessageDrivenChannelAdapter;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Device registry plus the outbound MQTT path. Publishing never blocks the
+ * caller: each message takes a slot of a bounded in-flight window that is
+ * released when the broker acknowledges it. Messages that find the window full
+ * wait in a bounded queue and are sent as slots free up, so a burst of commands
+ * is paced by the broker instead of piling up in the client; one that gets no
+ * slot within publish-timeout-ms fails. Topic changes go to the inbound adapter.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MqttService implements IMqttService {
 
+    private static final String NODE_PLACEHOLDER = "{node}";
+
     private final IMqttRepository mqttRepository;
     private final PasswordEncoder passwordEncoder;
+    private final MqttAsyncClient outboundClient;
+    private final MqttConnectOptions connectOptions;
+    private final MessageProducer inbound;
+    private final Semaphore inflight;
+    private final int maxInflight;
+    // Publishes waiting for an in-flight slot, bounded by maxQueued
+    private final BlockingQueue<PendingPublish> waiting;
+    private final long publishTimeoutMs;
+    private final String commandTopic;
+
+    private final Timer publishTimer;
+    private final Counter publishFailedCounter;
+    private final Counter publisherReconnectCounter;
+    private final Counter publisherLostCounter;
+    private final Counter subscriberReconnectCounter;
+    private final Counter subscriberLostCounter;
+    private final ScheduledExecutorService publisherScheduler;
+    private volatile boolean subscriberConnected;
+    private volatile boolean subscriberEverConnected;
+    private volatile boolean running;
+
+    public MqttService(
+            IMqttRepository mqttRepository,
+            PasswordEncoder passwordEncoder,
+            MqttAsyncClient mqttOutboundClient,
+            MqttPahoClientFactory mqttClientFactory,
+            MessageProducer inbound,
+            MeterRegistry meterRegistry,
+            @Value("${mqtt.outbound.max-inflight:100}") int maxInflight,
+            @Value("${mqtt.outbound.max-queued:10000}") int maxQueued,
+            @Value("${mqtt.outbound.publish-timeout-ms:5000}") long publishTimeoutMs,
+            @Value("${mqtt.outbound.command-topic:smarttrash/{node}/cmd}") String commandTopic) {
+        this.mqttRepository = mqttRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.outboundClient = mqttOutboundClient;
+        this.connectOptions = mqttClientFactory.getConnectionOptions();
+        this.inbound = inbound;
+        this.inflight = new Semaphore(maxInflight);
+        this.maxInflight = maxInflight;
+        this.waiting = new LinkedBlockingQueue<>(maxQueued);
+        this.publishTimeoutMs = publishTimeoutMs;
+        this.commandTopic = commandTopic;
+
+        this.publishTimer = Timer.builder("mqtt.publish.latency")
+                .description("Time from publish until the broker acknowledged the message")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.publishFailedCounter = meterRegistry.counter("mqtt.publish.failed");
+        this.publisherReconnectCounter = meterRegistry.counter("mqtt.reconnects", "client", "publisher");
+        this.publisherLostCounter = meterRegistry.counter("mqtt.connection.lost", "client", "publisher");
+        this.subscriberReconnectCounter = meterRegistry.counter("mqtt.reconnects", "client", "subscriber");
+        this.subscriberLostCounter = meterRegistry.counter("mqtt.connection.lost", "client", "subscriber");
+        Gauge.builder("mqtt.publish.inflight", inflight, window -> maxInflight - window.availablePermits())
+                .register(meterRegistry);
+        Gauge.builder("mqtt.publish.queued", waiting, BlockingQueue::size)
+                .description("Publishes waiting for a free in-flight slot")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.connected", this, service -> service.isBrokerConnected() ? 1 : 0)
+                .tag("client", "publisher")
+                .register(meterRegistry);
+        Gauge.builder("mqtt.connected", this, service -> service.isSubscriberConnected() ? 1 : 0)
+                .tag("client", "subscriber")
+                .register(meterRegistry);
+        this.publisherScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("mqtt-publisher-scheduler").daemon().factory());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        outboundClient.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverUri) {
+                if (reconnect) {
+                    publisherReconnectCounter.increment();
+                }
+                log.info("MQTT publisher {} to {}", reconnect ? "reconnected" : "connected", serverUri);
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+                publisherLostCounter.increment();
+                log.warn("MQTT publisher connection lost: {}", cause.getMessage());
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                // Publish-only client, nothing is subscribed
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                // Completion is handled by the listener passed to each publish
+            }
+        });
+        connect(0);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        publisherScheduler.shutdownNow();
+        PendingPublish pending;
+        while ((pending = waiting.poll()) != null) {
+            pending.result().completeExceptionally(new RunTimeException("MQTT publisher is shutting down"));
+        }
+        try {
+            if (outboundClient.isConnected()) {
+                outboundClient.disconnect().waitForCompletion(publishTimeoutMs);
+            }
+            outboundClient.close();
+        } catch (MqttException e) {
+            log.warn("Error closing MQTT publisher: {}", e.getMessage());
+        }
+    }
 
     @Override
     public Mqtt registerMqttDevice(String mqttUsername, String mqttPassword, String brokerUrl) {
@@ -91,26 +251,223 @@ public class MqttService implements IMqttService {
     }
 
     @Override
-    public void publishMessage(String topic, String message, int qos) {
+    public CompletableFuture<Void> publishMessage(String topic, String message, int qos) {
         log.debug("Publishing to MQTT topic {}: {}", topic, message);
-        // Publish via Spring Integration channel if configured
-        // Implementation depends on your MQTT broker setup
+        return publish(topic, message.getBytes(StandardCharsets.UTF_8), qos);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> publishToNodes(Collection<String> nodeNames, String message, int qos) {
+        // Encoded once, every node gets the same payload; the in-flight window paces the burst
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        List<String> nodes = List.copyOf(nodeNames);
+        for (String node : nodes) {
+            validateNodeName(node);
+        }
+        List<CompletableFuture<Void>> sends = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            sends.add(publish(commandTopic.replace(NODE_PLACEHOLDER, node), payload, qos));
+        }
+        return CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                .handle((ignored, error) -> {
+                    List<String> failed = new ArrayList<>();
+                    for (int i = 0; i < nodes.size(); i++) {
+                        if (sends.get(i).isCompletedExceptionally()) {
+                            failed.add(nodes.get(i));
+                        }
+                    }
+                    log.info("Published command to {} of {} nodes", nodes.size() - failed.size(), nodes.size());
+                    return failed;
+                });
     }
 
     @Override
     public void subscribeTopic(String topic, int qos) {
         log.info("Subscribing to MQTT topic: {}", topic);
-        // Subscribe via Spring Integration if configured
+        validateQos(qos);
+        if (inbound instanceof AbstractMqttMessageDrivenChannelAdapter<?, ?> adapter) {
+            adapter.addTopic(topic, qos);
+        } else if (inbound instanceof SharedSubscriptionInboundAdapter adapter) {
+            adapter.addTopic(topic, qos);
+        }
     }
 
     @Override
     public void unsubscribeTopic(String topic) {
         log.info("Unsubscribing from MQTT topic: {}", topic);
-        // Unsubscribe via Spring Integration if configured
+        if (inbound instanceof AbstractMqttMessageDrivenChannelAdapter<?, ?> adapter) {
+            adapter.removeTopic(topic);
+        } else if (inbound instanceof SharedSubscriptionInboundAdapter adapter) {
+            adapter.removeTopic(topic);
+        }
     }
 
     @Override
     public boolean isBrokerConnected() {
-        return true;
+        return outboundClient.isConnected();
+    }
+
+    @Override
+    public boolean isSubscriberConnected() {
+        if (inbound instanceof SharedSubscriptionInboundAdapter adapter) {
+            return adapter.isConnected();
+        }
+        return subscriberConnected;
+    }
+
+    @EventListener
+    public void onSubscribed(MqttSubscribedEvent event) {
+        if (event.getSource() == inbound) {
+            if (subscriberEverConnected && !subscriberConnected) {
+                subscriberReconnectCounter.increment();
+            }
+            subscriberConnected = true;
+            subscriberEverConnected = true;
+        }
+    }
+
+    @EventListener
+    public void onConnectionFailed(MqttConnectionFailedEvent event) {
+        if (event.getSource() == inbound) {
+            if (subscriberConnected) {
+                subscriberLostCounter.increment();
+            }
+            subscriberConnected = false;
+        }
+    }
+
+    private CompletableFuture<Void> publish(String topic, byte[] payload, int qos) {
+        validateQos(qos);
+        validateTopic(topic);
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (!outboundClient.isConnected()) {
+            publishFailedCounter.increment();
+            result.completeExceptionally(new RunTimeException("MQTT publisher is not connected"));
+            return result;
+        }
+
+        PendingPublish publish = new PendingPublish(topic, payload, qos, result);
+        if (waiting.isEmpty() && inflight.tryAcquire()) {
+            send(publish);
+            return result;
+        }
+        if (!waiting.offer(publish)) {
+            publishFailedCounter.increment();
+            result.completeExceptionally(new RunTimeException("MQTT in-flight window full (" + maxInflight
+                    + " messages) and " + waiting.size() + " publishes already waiting"));
+            return result;
+        }
+        ScheduledFuture<?> timeout = publisherScheduler.schedule(() -> {
+            if (result.completeExceptionally(new RunTimeException(
+                    "No MQTT in-flight slot free within " + publishTimeoutMs + " ms"))) {
+                publishFailedCounter.increment();
+                waiting.remove(publish);
+            }
+        }, publishTimeoutMs, TimeUnit.MILLISECONDS);
+        result.whenComplete((ignored, error) -> timeout.cancel(false));
+        // A slot may have been freed between the tryAcquire and the offer
+        sendWaiting();
+        return result;
+    }
+
+    /**
+     * Hands free slots to waiting publishes, skipping those that already timed out
+     */
+    private void sendWaiting() {
+        while (!waiting.isEmpty() && inflight.tryAcquire()) {
+            PendingPublish next = waiting.poll();
+            if (next == null || next.result().isDone()) {
+                inflight.release();
+                continue;
+            }
+            send(next);
+        }
+    }
+
+    /**
+     * Sends a publish that already holds a slot; the slot is released when it completes or fails
+     */
+    private void send(PendingPublish publish) {
+        CompletableFuture<Void> result = publish.result();
+        long startedAt = System.nanoTime();
+        try {
+            outboundClient.publish(publish.topic(), publish.payload(), publish.qos(), false, null,
+                    new IMqttActionListener() {
+                        @Override
+                        public void onSuccess(IMqttToken token) {
+                            inflight.release();
+                            publishTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                            result.complete(null);
+                            sendWaiting();
+                        }
+
+                        @Override
+                        public void onFailure(IMqttToken token, Throwable exception) {
+                            inflight.release();
+                            publishFailedCounter.increment();
+                            result.completeExceptionally(exception);
+                            sendWaiting();
+                        }
+                    });
+        } catch (MqttException | RuntimeException e) {
+            // The listener never runs when publish() throws, so the slot is given back here; the caller's
+            // loop moves on to the next waiting publish
+            inflight.release();
+            publishFailedCounter.increment();
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void connect(long delayMs) {
+        // Paho only reconnects by itself after a first successful connect, so that one is retried here
+        publisherScheduler.schedule(() -> {
+            if (!running) {
+                return;
+            }
+            try {
+                outboundClient.connect(connectOptions, null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken token) {
+                        // From here on automatic reconnect takes over
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken token, Throwable exception) {
+                        long nextDelayMs = Math.min(Math.max(delayMs * 2, 1000), 60000);
+                        log.warn("MQTT publisher connect failed, retrying in {} ms: {}", nextDelayMs,
+                                exception.getMessage());
+                        connect(nextDelayMs);
+                    }
+                });
+            } catch (MqttException e) {
+                log.warn("MQTT publisher connect failed: {}", e.getMessage());
+                connect(Math.min(Math.max(delayMs * 2, 1000), 60000));
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void validateQos(int qos) {
+        if (qos < 0 || qos > 2) {
+            throw new ServiceException("QoS must be 0, 1 or 2");
+        }
+    }
+
+    private static void validateTopic(String topic) {
+        try {
+            // Wildcards are only valid in subscriptions
+            MqttTopic.validate(topic, false);
+        } catch (IllegalArgumentException e) {
+            throw new ServiceException("Invalid MQTT topic '" + topic + "': " + e.getMessage(), e);
+        }
+    }
+
+    private static void validateNodeName(String node) {
+        // The name becomes one level of the command topic
+        if (node == null || node.isEmpty() || node.contains("/") || node.contains("+") || node.contains("#")) {
+            throw new ServiceException("Invalid node name '" + node + "'");
+        }
+    }
+
+    private record PendingPublish(String topic, byte[] payload, int qos, CompletableFuture<Void> result) {
     }
 }
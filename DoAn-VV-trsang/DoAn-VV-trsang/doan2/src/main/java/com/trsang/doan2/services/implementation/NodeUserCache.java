@@ -0,0 +1,115 @@
+package com.trsang.doan2.services.implementation;
+
+import com.trsang.doan2.repositories.IUserRepository;
+import com.trsang.doan2.services.interfaces.INodeUserCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node name -> user id lookup for the MQTT ingest path. Unknown nodes are
+ * cached too (negative entries) so a misconfigured device does not cost a
+ * query per frame.
+ */
+@Slf4j
+@Service
+public class NodeUserCache implements INodeUserCache {
+
+    private final IUserRepository userRepository;
+    private final String fallbackUsername;
+    private final long ttlMs;
+    private final long negativeTtlMs;
+    private final int maxEntries;
+
+    private final Map<String, CachedUserId> cache = new ConcurrentHashMap<>();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public NodeUserCache(
+            IUserRepository userRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.ingest.node-user.fallback-username:admin}") String fallbackUsername,
+            @Value("${app.ingest.node-user.ttl-ms:300000}") long ttlMs,
+            @Value("${app.ingest.node-user.negative-ttl-ms:60000}") long negativeTtlMs,
+            @Value("${app.ingest.node-user.max-entries:10000}") int maxEntries) {
+        this.userRepository = userRepository;
+        this.fallbackUsername = fallbackUsername;
+        this.ttlMs = ttlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        this.maxEntries = maxEntries;
+
+        Gauge.builder("ingest.node-user.cache.size", cache, Map::size).register(meterRegistry);
+        this.hitCounter = meterRegistry.counter("ingest.node-user.cache.requests", "result", "hit");
+        this.missCounter = meterRegistry.counter("ingest.node-user.cache.requests", "result", "miss");
+    }
+
+    @Override
+    public Optional<UUID> resolveUserId(String nodeName) {
+        UUID userId = lookup(nodeName);
+        if (userId == null) {
+            userId = lookup(fallbackUsername);
+        }
+        return Optional.ofNullable(userId);
+    }
+
+    @Override
+    public void invalidate(String username) {
+        if (username == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Evict after commit so a concurrent lookup cannot re-cache the old row
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(username);
+                }
+            });
+        }
+        cache.remove(username);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    private UUID lookup(String username) {
+        long now = System.currentTimeMillis();
+        CachedUserId cached = cache.get(username);
+        if (cached != null && cached.expiresAt() > now) {
+            hitCounter.increment();
+            return cached.userId();
+        }
+
+        missCounter.increment();
+        UUID userId = userRepository.findIdByUsername(username).orElse(null);
+        if (cache.size() >= maxEntries) {
+            evictExpired(now);
+        }
+        cache.put(username, new CachedUserId(userId, now + (userId != null ? ttlMs : negativeTtlMs)));
+        return userId;
+    }
+
+    private void evictExpired(long now) {
+        cache.values().removeIf(entry -> entry.expiresAt() <= now);
+        if (cache.size() >= maxEntries) {
+            log.warn("Node user cache still holds {} entries after eviction, clearing it", cache.size());
+            cache.clear();
+        }
+    }
+
+    private record CachedUserId(UUID userId, long expiresAt) {
+    }
+}
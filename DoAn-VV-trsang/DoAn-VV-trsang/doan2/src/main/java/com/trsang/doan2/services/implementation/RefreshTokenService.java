@@ -15,6 +15,7 @@ import com.trsang.doan2.entities.User;
 import com.trsang.doan2.exceptions.RefreshTokenException;
 import com.trsang.doan2.repositories.IRefreshTokenRepository;
 import com.trsang.doan2.services.interfaces.IRefreshTokenService;
+import com.trsang.doan2.services.interfaces.IVerifiedTokenCache;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -24,10 +25,15 @@ public class RefreshTokenService implements IRefreshTokenService {
 
     private final IRefreshTokenRepository refreshTokenRepository;
     private final JwtConfig jwtConfig;
+    private final IVerifiedTokenCache verifiedTokenCache;
 
-    public RefreshTokenService(IRefreshTokenRepository refreshTokenRepository, JwtConfig jwtConfig) {
+    public RefreshTokenService(
+            IRefreshTokenRepository refreshTokenRepository,
+            JwtConfig jwtConfig,
+            IVerifiedTokenCache verifiedTokenCache) {
         this.refreshTokenRepository = refreshTokenRepository;
         this.jwtConfig = jwtConfig;
+        this.verifiedTokenCache = verifiedTokenCache;
     }
 
     @Override
@@ -130,6 +136,8 @@ public class RefreshTokenService implements IRefreshTokenService {
         token.setRevoked(true);
         token.setReasonRevoked(reason);
         refreshTokenRepository.save(token);
+        // Access tokens already issued stay valid until exp, but are verified again from now on
+        verifiedTokenCache.invalidateUser(token.getUser().getUsername());
         log.debug("Refresh token revoked for user: {}, reason: {}", 
                 token.getUser().getUsername(), reason);
     }
@@ -139,6 +147,7 @@ public class RefreshTokenService implements IRefreshTokenService {
     public void deleteByUser(User user) {
         // Instead of physical deletion, mark all tokens as revoked
         int updated = refreshTokenRepository.revokeAllUserTokens(user);
+        verifiedTokenCache.invalidateUser(user.getUsername());
         log.info("Revoked {} refresh tokens for user: {}", updated, user.getUsername());
     }
     
@@ -0,0 +1,125 @@
+package com.trsang.doan2.services.implementation;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.trsang.doan2.dtos.SensorDataHistoryPage;
+import com.trsang.doan2.dtos.SensorDataHistoryRow;
+import com.trsang.doan2.dtos.SensorDataResponse;
+import com.trsang.doan2.repositories.ISensorDataRepository;
+import com.trsang.doan2.services.interfaces.ISensorDataHistoryService;
+
+/**
+ * Seek-based history paging. Each page continues from the last row of the
+ * previous one, so page N costs the same index range scan as page 1.
+ */
+@Service
+public class SensorDataHistoryService implements ISensorDataHistoryService {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE_TIME;
+    // Sorts before every id, so a first page starts strictly before "to"
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+    // Lower bound used when no "from" is given, inside the DATETIME range
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final ISensorDataRepository sensorDataRepository;
+    private final int defaultLimit;
+    private final int maxLimit;
+
+    public SensorDataHistoryService(
+            ISensorDataRepository sensorDataRepository,
+            @Value("${app.sensor-data.history.default-limit:100}") int defaultLimit,
+            @Value("${app.sensor-data.history.max-limit:1000}") int maxLimit) {
+        this.sensorDataRepository = sensorDataRepository;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SensorDataHistoryPage getHistory(String nodeName, LocalDateTime from, LocalDateTime to,
+            String cursor, Integer limit) {
+        int pageSize = limit == null ? defaultLimit : limit;
+        if (pageSize < 1 || pageSize > maxLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxLimit);
+        }
+        LocalDateTime lowerBound = from != null ? from : EARLIEST;
+        if (to != null && !lowerBound.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+
+        LocalDateTime beforeTimestamp;
+        UUID beforeId;
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor position = decodeCursor(cursor);
+            beforeTimestamp = position.timestamp();
+            beforeId = position.id();
+        } else {
+            // "to" is exclusive, a reading at exactly "to" is not returned
+            beforeTimestamp = to != null ? to : LocalDateTime.now().plusSeconds(1);
+            beforeId = MIN_ID;
+        }
+
+        // One extra row tells us whether an older page exists
+        Limit fetchLimit = Limit.of(pageSize + 1);
+        List<SensorDataHistoryRow> rows = nodeName != null && !nodeName.isBlank()
+                ? sensorDataRepository.findHistoryPageByNode(nodeName, lowerBound, beforeTimestamp, beforeId, fetchLimit)
+                : sensorDataRepository.findHistoryPage(lowerBound, beforeTimestamp, beforeId, fetchLimit);
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            SensorDataHistoryRow last = rows.get(pageSize - 1);
+            nextCursor = encodeCursor(last.timestamp(), last.id());
+        }
+
+        return SensorDataHistoryPage.builder()
+                .data(rows.stream().map(this::toResponse).toList())
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private SensorDataResponse toResponse(SensorDataHistoryRow row) {
+        return SensorDataResponse.builder()
+                .id(String.valueOf(row.id()))
+                .nodeName(row.nodeName())
+                .latitude(row.latitude())
+                .longitude(row.longitude())
+                .distance(row.distance())
+                .gas(row.gas())
+                .timestamp(row.timestamp().format(formatter))
+                .build();
+    }
+
+    private String encodeCursor(LocalDateTime timestamp, UUID id) {
+        String raw = timestamp.format(formatter) + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new Cursor(LocalDateTime.parse(raw.substring(0, separator), formatter),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private record Cursor(LocalDateTime timestamp, UUID id) {
+    }
+}
@@ -0,0 +1,147 @@
+package com.trsang.doan2.services.implementation;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.trsang.doan2.entities.id.UuidV7Generator;
+import com.trsang.doan2.services.interfaces.ISensorDataIdMigrationService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Optional one-off job that moves rows written before UUIDv7 ids onto
+ * time-ordered ids, oldest first, in small batches. Nothing references
+ * sensor_data ids, so rows can be re-keyed in place.
+ */
+@Slf4j
+@Service
+public class SensorDataIdMigrationService implements ISensorDataIdMigrationService {
+
+    private static final String SELECT_SQL = """
+            SELECT id, timestamp FROM sensor_data
+            WHERE timestamp > ? OR (timestamp = ? AND id > ?)
+            ORDER BY timestamp, id
+            LIMIT ?
+            """;
+    private static final String UPDATE_SQL = "UPDATE sensor_data SET id = ? WHERE id = ? AND timestamp = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final Counter migratedCounter;
+
+    public SensorDataIdMigrationService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.sensor-data.id-migration.enabled:false}") boolean enabled,
+            @Value("${app.sensor-data.id-migration.batch-size:1000}") int batchSize,
+            @Value("${app.sensor-data.id-migration.batch-pause-ms:50}") long batchPauseMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.batchPauseMs = batchPauseMs;
+        this.migratedCounter = meterRegistry.counter("sensor.id-migration.migrated");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startIfEnabled() {
+        if (!enabled) {
+            return;
+        }
+        Thread worker = new Thread(() -> {
+            try {
+                migrateLegacyIds();
+            } catch (Exception e) {
+                log.error("Sensor data id migration failed: {}", e.getMessage(), e);
+            }
+        }, "sensor-data-id-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public long migrateLegacyIds() {
+        log.info("Migrating sensor_data ids to UUIDv7");
+        long started = System.currentTimeMillis();
+        long migrated = 0;
+        long scanned = 0;
+        Timestamp lastTimestamp = Timestamp.valueOf(LocalDateTime.of(1970, 1, 1, 0, 0));
+        byte[] lastId = new byte[16];
+
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Row> rows = jdbcTemplate.query(SELECT_SQL,
+                    (rs, rowNum) -> new Row(rs.getBytes(1), rs.getTimestamp(2)),
+                    lastTimestamp, lastTimestamp, lastId, batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            scanned += rows.size();
+            Row last = rows.get(rows.size() - 1);
+            lastTimestamp = last.timestamp();
+            lastId = last.id();
+
+            List<Object[]> updates = new ArrayList<>();
+            for (Row row : rows) {
+                // Version nibble is the high half of byte 6
+                if ((row.id()[6] & 0xF0) != 0x70) {
+                    long epochMillis = row.timestamp().toLocalDateTime()
+                            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    updates.add(new Object[] { toBytes(UuidV7Generator.forTimestamp(epochMillis)), row.id(), row.timestamp() });
+                }
+            }
+            if (!updates.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPDATE_SQL, updates));
+                migrated += updates.size();
+                migratedCounter.increment(updates.size());
+                pause();
+            }
+            if (scanned % (batchSize * 100L) < batchSize) {
+                log.info("Sensor data id migration: {} rows scanned, {} re-keyed, now at {}", scanned, migrated, lastTimestamp);
+            }
+        }
+
+        log.info("Sensor data id migration finished: {} of {} rows re-keyed in {} ms",
+                migrated, scanned, System.currentTimeMillis() - started);
+        return migrated;
+    }
+
+    private void pause() {
+        if (batchPauseMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(batchPauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    private record Row(byte[] id, Timestamp timestamp) {
+    }
+}
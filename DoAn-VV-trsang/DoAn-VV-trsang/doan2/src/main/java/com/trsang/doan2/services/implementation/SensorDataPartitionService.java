@@ -0,0 +1,213 @@
+package com.trsang.doan2.services.implementation;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.trsang.doan2.services.interfaces.ISensorDataPartitionService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Monthly RANGE COLUMNS partitioning of sensor_data on MySQL. Queries that
+ * bound timestamp (history, rollup checks, retention) only touch the months
+ * they cover, and expired months are removed with DROP PARTITION instead of
+ * row deletes. Opt-in: converting an existing table rebuilds it once.
+ */
+@Slf4j
+@Service
+public class SensorDataPartitionService implements ISensorDataPartitionService {
+
+    private static final String TABLE = "sensor_data";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final AtomicInteger partitionCount = new AtomicInteger();
+    private final Counter droppedCounter;
+    private volatile Boolean mysql;
+
+    public SensorDataPartitionService(
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.sensor-data.partitioning.enabled:false}") boolean enabled,
+            @Value("${app.sensor-data.partitioning.months-ahead:3}") int monthsAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+        Gauge.builder("sensor.partitions.count", partitionCount, AtomicInteger::get)
+                .description("Partitions of the sensor_data table")
+                .register(meterRegistry);
+        this.droppedCounter = meterRegistry.counter("sensor.partitions.dropped");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            maintainPartitions();
+        } catch (Exception e) {
+            log.error("Could not maintain sensor_data partitions: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void maintainPartitions() {
+        if (!isActive()) {
+            return;
+        }
+        List<Partition> partitions = listPartitions();
+        if (partitions.isEmpty()) {
+            convertTable();
+            partitions = listPartitions();
+        }
+
+        // Keep monthsAhead whole months in front of the current one
+        LocalDateTime target = LocalDate.now().withDayOfMonth(1).plusMonths(monthsAhead + 1L).atStartOfDay();
+        LocalDateTime lastBound = partitions.stream()
+                .map(Partition::upperBound)
+                .filter(bound -> bound != null)
+                .reduce((first, second) -> second)
+                .orElse(LocalDate.now().withDayOfMonth(1).atStartOfDay());
+        List<String> definitions = new ArrayList<>();
+        for (LocalDateTime bound = lastBound.plusMonths(1); !bound.isAfter(target); bound = bound.plusMonths(1)) {
+            definitions.add(definition(bound));
+        }
+
+        if (!definitions.isEmpty()) {
+            boolean hasFuture = partitions.stream().anyMatch(p -> FUTURE_PARTITION.equals(p.name()));
+            if (hasFuture) {
+                // p_future only holds rows past the last month, so reorganizing it is cheap
+                definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (MAXVALUE)");
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + FUTURE_PARTITION
+                        + " INTO (" + String.join(", ", definitions) + ")");
+            } else {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD PARTITION (" + String.join(", ", definitions) + ")");
+            }
+            log.info("Added {} sensor_data partitions up to {}", definitions.size() - (hasFuture ? 1 : 0), target);
+        }
+        partitionCount.set(listPartitions().size());
+    }
+
+    @Override
+    public Optional<LocalDateTime> findExpiredPartitionEnd(LocalDateTime timestamp, LocalDateTime cutoff) {
+        if (!isActive()) {
+            return Optional.empty();
+        }
+        for (Partition partition : listPartitions()) {
+            if (partition.upperBound() != null && timestamp.isBefore(partition.upperBound())) {
+                return partition.upperBound().isAfter(cutoff) ? Optional.empty() : Optional.of(partition.upperBound());
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized void dropPartitionsBefore(LocalDateTime end) {
+        if (!isActive()) {
+            return;
+        }
+        List<String> expired = listPartitions().stream()
+                .filter(p -> p.upperBound() != null && !p.upperBound().isAfter(end))
+                .map(Partition::name)
+                .toList();
+        if (expired.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + String.join(", ", expired));
+        droppedCounter.increment(expired.size());
+        partitionCount.set(listPartitions().size());
+        log.info("Dropped sensor_data partitions {}", expired);
+    }
+
+    /**
+     * One-off conversion: partitioned InnoDB tables allow no foreign keys, and the
+     * partition column has to be part of the primary key.
+     */
+    private void convertTable() {
+        log.warn("Partitioning {} by month, the table is rebuilt and writes wait until it finishes", TABLE);
+
+        List<String> foreignKeys = jdbcTemplate.queryForList("""
+                SELECT CONSTRAINT_NAME FROM information_schema.REFERENTIAL_CONSTRAINTS
+                WHERE CONSTRAINT_SCHEMA = DATABASE() AND TABLE_NAME = ?
+                """, String.class, TABLE);
+        for (String foreignKey : foreignKeys) {
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP FOREIGN KEY " + foreignKey);
+        }
+
+        List<String> primaryKey = jdbcTemplate.queryForList("""
+                SELECT COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND CONSTRAINT_NAME = 'PRIMARY'
+                """, String.class, TABLE);
+        if (!primaryKey.contains("timestamp")) {
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PRIMARY KEY, ADD PRIMARY KEY (id, timestamp)");
+        }
+
+        LocalDateTime oldest = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM " + TABLE, LocalDateTime.class);
+        LocalDate firstMonth = (oldest != null ? oldest.toLocalDate() : LocalDate.now()).withDayOfMonth(1);
+        LocalDateTime lastBound = LocalDate.now().withDayOfMonth(1).plusMonths(1).atStartOfDay();
+        List<String> definitions = new ArrayList<>();
+        for (LocalDateTime bound = firstMonth.plusMonths(1).atStartOfDay(); !bound.isAfter(lastBound); bound = bound.plusMonths(1)) {
+            definitions.add(definition(bound));
+        }
+        definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (MAXVALUE)");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " PARTITION BY RANGE COLUMNS(timestamp) ("
+                + String.join(", ", definitions) + ")");
+        log.info("Partitioned {} into {} partitions", TABLE, definitions.size());
+    }
+
+    private List<Partition> listPartitions() {
+        return jdbcTemplate.query("""
+                SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS
+                WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL
+                ORDER BY PARTITION_ORDINAL_POSITION
+                """, (rs, rowNum) -> new Partition(rs.getString(1), parseBound(rs.getString(2))), TABLE);
+    }
+
+    // Partition p202611 holds the month before its bound, i.e. November 2026
+    private String definition(LocalDateTime upperBound) {
+        return "PARTITION " + upperBound.minusMonths(1).format(NAME_FORMAT)
+                + " VALUES LESS THAN ('" + upperBound.format(BOUND_FORMAT) + "')";
+    }
+
+    private LocalDateTime parseBound(String description) {
+        if (description == null || "MAXVALUE".equalsIgnoreCase(description)) {
+            return null;
+        }
+        return LocalDateTime.parse(description.replace("'", ""), BOUND_FORMAT);
+    }
+
+    private boolean isActive() {
+        if (!enabled) {
+            return false;
+        }
+        if (mysql == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            mysql = product != null && (product.contains("MySQL") || product.contains("MariaDB"));
+            if (!mysql) {
+                log.warn("sensor_data partitioning needs MySQL, database is {}", product);
+            }
+        }
+        return mysql;
+    }
+
+    private record Partition(String name, LocalDateTime upperBound) {
+    }
+}
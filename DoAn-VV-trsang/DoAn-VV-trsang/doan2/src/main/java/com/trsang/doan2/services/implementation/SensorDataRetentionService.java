@@ -0,0 +1,215 @@
+package com.trsang.doan2.services.implementation;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.trsang.doan2.entities.SensorDataRollup;
+import com.trsang.doan2.repositories.ISensorDataRepository;
+import com.trsang.doan2.repositories.ISensorDataRollupRepository;
+import com.trsang.doan2.services.interfaces.ISensorDataPartitionService;
+import com.trsang.doan2.services.interfaces.ISensorDataRetentionService;
+import com.trsang.doan2.services.interfaces.ISensorDataRollupService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounds the size of sensor_data. Expired days are processed oldest first:
+ * their rollups are checked against the raw rows (and rebuilt when they differ,
+ * e.g. rows ingested before rollups existed), then the raw rows are removed:
+ * whole expired months by dropping their partition when sensor_data is
+ * partitioned, otherwise in short delete transactions so no long lock is held.
+ */
+@Slf4j
+@Service
+public class SensorDataRetentionService implements ISensorDataRetentionService {
+
+    private final ISensorDataRepository sensorDataRepository;
+    private final ISensorDataRollupRepository rollupRepository;
+    private final ISensorDataRollupService rollupService;
+    private final ISensorDataPartitionService partitionService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int rawDays;
+    private final int minuteRollupDays;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final long maxRunMs;
+
+    private final Counter deletedCounter;
+    private final Counter rebuiltCounter;
+    private final AtomicLong lastRunRowsPerSecond = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    public SensorDataRetentionService(
+            ISensorDataRepository sensorDataRepository,
+            ISensorDataRollupRepository rollupRepository,
+            ISensorDataRollupService rollupService,
+            ISensorDataPartitionService partitionService,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.sensor-data.retention.enabled:true}") boolean enabled,
+            @Value("${app.sensor-data.retention.raw-days:90}") int rawDays,
+            @Value("${app.sensor-data.retention.minute-rollup-days:30}") int minuteRollupDays,
+            @Value("${app.sensor-data.retention.batch-size:1000}") int batchSize,
+            @Value("${app.sensor-data.retention.batch-pause-ms:50}") long batchPauseMs,
+            @Value("${app.sensor-data.retention.max-run-ms:1800000}") long maxRunMs) {
+        this.sensorDataRepository = sensorDataRepository;
+        this.rollupRepository = rollupRepository;
+        this.rollupService = rollupService;
+        this.partitionService = partitionService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.rawDays = rawDays;
+        this.minuteRollupDays = minuteRollupDays;
+        this.batchSize = batchSize;
+        this.batchPauseMs = batchPauseMs;
+        this.maxRunMs = maxRunMs;
+
+        this.deletedCounter = meterRegistry.counter("sensor.retention.deleted");
+        this.rebuiltCounter = meterRegistry.counter("sensor.retention.rollups.rebuilt");
+        Gauge.builder("sensor.retention.rate", lastRunRowsPerSecond, AtomicLong::get)
+                .description("Raw rows deleted per second during the last retention run")
+                .baseUnit("rows/s")
+                .register(meterRegistry);
+        Gauge.builder("sensor.retention.lag", lagSeconds, AtomicLong::get)
+                .description("How far the oldest raw reading is past the retention period")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public long applyRetention() {
+        if (!enabled) {
+            return 0;
+        }
+        long startedAt = System.currentTimeMillis();
+        long deadline = startedAt + maxRunMs;
+        LocalDateTime cutoff = LocalDate.now().minusDays(rawDays).atStartOfDay();
+
+        long deleted = 0;
+        LocalDateTime oldest = sensorDataRepository.findOldestTimestamp();
+        try {
+            while (oldest != null && oldest.isBefore(cutoff) && System.currentTimeMillis() < deadline) {
+                LocalDateTime dayStart = oldest.toLocalDate().atStartOfDay();
+                LocalDateTime dayEnd = dayStart.plusDays(1);
+                Optional<LocalDateTime> partitionEnd = partitionService.findExpiredPartitionEnd(oldest, cutoff);
+                if (partitionEnd.isPresent()) {
+                    // Every day of the month is checked before the partition goes as a whole
+                    long rows = 0;
+                    for (LocalDateTime day = dayStart; day.isBefore(partitionEnd.get()); day = day.plusDays(1)) {
+                        rows += verifyRollups(day, day.plusDays(1));
+                    }
+                    partitionService.dropPartitionsBefore(partitionEnd.get());
+                    deletedCounter.increment(rows);
+                    deleted += rows;
+                } else {
+                    verifyRollups(dayStart, dayEnd);
+                    deleted += deleteBefore(dayEnd.isBefore(cutoff) ? dayEnd : cutoff, deadline);
+                }
+                oldest = sensorDataRepository.findOldestTimestamp();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (minuteRollupDays > 0) {
+            LocalDateTime minuteCutoff = LocalDate.now().minusDays(minuteRollupDays).atStartOfDay();
+            Integer purged = transactionTemplate.execute(status ->
+                    rollupRepository.deleteOlderThan(SensorDataRollup.Resolution.MINUTE, minuteCutoff));
+            if (purged != null && purged > 0) {
+                log.info("Purged {} minute rollups older than {}", purged, minuteCutoff);
+            }
+        }
+
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - startedAt);
+        lastRunRowsPerSecond.set(deleted * 1000 / elapsedMs);
+        lagSeconds.set(oldest != null && oldest.isBefore(cutoff)
+                ? Duration.between(oldest, cutoff).toSeconds() : 0);
+        if (deleted > 0 || lagSeconds.get() > 0) {
+            log.info("Sensor data retention deleted {} rows in {} ms ({} rows/s), lag {} s",
+                    deleted, elapsedMs, lastRunRowsPerSecond.get(), lagSeconds.get());
+        }
+        return deleted;
+    }
+
+    /**
+     * Rebuild the rollups of every node whose day bucket is missing some of its raw rows.
+     * Returns the number of raw rows in the day.
+     */
+    private long verifyRollups(LocalDateTime dayStart, LocalDateTime dayEnd) {
+        Map<String, Long> rolledUp = new HashMap<>();
+        for (Object[] row : rollupRepository.sumCountByNodeBetween(SensorDataRollup.Resolution.DAY, dayStart, dayEnd)) {
+            rolledUp.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        // Minute buckets of a day past minute-rollup-days would only be purged again at the end of the run
+        Set<SensorDataRollup.Resolution> resolutions = minuteRollupDays > 0
+                && dayStart.isBefore(LocalDate.now().minusDays(minuteRollupDays).atStartOfDay())
+                ? EnumSet.of(SensorDataRollup.Resolution.HOUR, SensorDataRollup.Resolution.DAY)
+                : EnumSet.allOf(SensorDataRollup.Resolution.class);
+
+        long total = 0;
+        for (Object[] row : sensorDataRepository.countByNodeBetween(dayStart, dayEnd)) {
+            String nodeName = (String) row[0];
+            long rawCount = ((Number) row[1]).longValue();
+            total += rawCount;
+            // More rolled up than raw means part of the day was already deleted, the rollups are the record now
+            if (rolledUp.getOrDefault(nodeName, 0L) >= rawCount) {
+                continue;
+            }
+            log.info("Rebuilding rollups of node {} for {} ({} raw rows, {} rolled up)",
+                    nodeName, dayStart.toLocalDate(), rawCount, rolledUp.getOrDefault(nodeName, 0L));
+            // One short transaction per hour: only that hour's readings are managed at a time and rollup
+            // rows are not locked against the live writer for the whole day. The first hour also clears
+            // the day bucket, which the later hours add to; a run cut short leaves it below the raw count,
+            // so the next run rebuilds the day again.
+            for (LocalDateTime hour = dayStart; hour.isBefore(dayEnd); hour = hour.plusHours(1)) {
+                LocalDateTime from = hour;
+                LocalDateTime to = hour.plusHours(1);
+                transactionTemplate.executeWithoutResult(status -> {
+                    rollupRepository.deleteByNodeBetween(nodeName, from, to);
+                    rollupService.applyBatch(sensorDataRepository.findByNodeBetween(nodeName, from, to), resolutions);
+                });
+            }
+            rebuiltCounter.increment();
+        }
+        return total;
+    }
+
+    private long deleteBefore(LocalDateTime before, long deadline) throws InterruptedException {
+        long deleted = 0;
+        while (System.currentTimeMillis() < deadline) {
+            Integer count = transactionTemplate.execute(status -> {
+                List<UUID> ids = sensorDataRepository.findIdsOlderThan(before, Limit.of(batchSize));
+                return ids.isEmpty() ? 0 : sensorDataRepository.deleteByIds(ids, before);
+            });
+            if (count == null || count == 0) {
+                break;
+            }
+            deleted += count;
+            deletedCounter.increment(count);
+            if (batchPauseMs > 0) {
+                // Leave room for the ingest writer and replication between batches
+                Thread.sleep(batchPauseMs);
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,223 @@
+package com.trsang.doan2.services.implementation;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.trsang.doan2.dtos.SensorDataRollupResponse;
+import com.trsang.doan2.entities.SensorData;
+import com.trsang.doan2.entities.SensorDataRollup;
+import com.trsang.doan2.repositories.ISensorDataRollupRepository;
+import com.trsang.doan2.services.interfaces.ISensorDataRollupService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Maintains minute/hour/day aggregates per node as readings are written.
+ * A batch is first folded in memory, so a batch of hundreds of readings turns
+ * into one upsert per (node, resolution, bucket) touched.
+ */
+@Slf4j
+@Service
+public class SensorDataRollupService implements ISensorDataRollupService {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE_TIME;
+    private static final Set<SensorDataRollup.Resolution> ALL_RESOLUTIONS =
+            Collections.unmodifiableSet(EnumSet.allOf(SensorDataRollup.Resolution.class));
+
+    // "new" is the incoming row (MySQL 8.0.19+ row alias, VALUES() is deprecated). Assignments run in
+    // order, so the fix conditions still see the stored last_fix_at until it is set last; they use >=
+    // so they hold whether or not it was already assigned, and a null incoming fix keeps the stored one
+    private static final String UPSERT_SQL = """
+            INSERT INTO sensor_data_rollup (node_name, resolution, bucket_start, sample_count,
+                distance_min, distance_max, distance_sum, gas_min, gas_max, gas_sum,
+                tipping_count, last_fix_at, last_latitude, last_longitude)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) AS new
+            ON DUPLICATE KEY UPDATE
+                sample_count = sample_count + new.sample_count,
+                distance_min = LEAST(distance_min, new.distance_min),
+                distance_max = GREATEST(distance_max, new.distance_max),
+                distance_sum = distance_sum + new.distance_sum,
+                gas_min = LEAST(gas_min, new.gas_min),
+                gas_max = GREATEST(gas_max, new.gas_max),
+                gas_sum = gas_sum + new.gas_sum,
+                tipping_count = tipping_count + new.tipping_count,
+                last_latitude = CASE WHEN new.last_fix_at >= COALESCE(last_fix_at, new.last_fix_at)
+                    THEN new.last_latitude ELSE last_latitude END,
+                last_longitude = CASE WHEN new.last_fix_at >= COALESCE(last_fix_at, new.last_fix_at)
+                    THEN new.last_longitude ELSE last_longitude END,
+                last_fix_at = CASE WHEN new.last_fix_at >= COALESCE(last_fix_at, new.last_fix_at)
+                    THEN new.last_fix_at ELSE last_fix_at END
+            """;
+
+    private final ISensorDataRollupRepository rollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxRows;
+
+    private final Counter upsertCounter;
+    private final Timer applyTimer;
+
+    public SensorDataRollupService(
+            ISensorDataRollupRepository rollupRepository,
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.sensor-data.rollup.max-rows:5000}") int maxRows) {
+        this.rollupRepository = rollupRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxRows = maxRows;
+        this.upsertCounter = meterRegistry.counter("sensor.rollup.upserts");
+        this.applyTimer = meterRegistry.timer("sensor.rollup.apply");
+    }
+
+    @Override
+    public void applyBatch(List<SensorData> readings) {
+        applyBatch(readings, ALL_RESOLUTIONS);
+    }
+
+    @Override
+    public void applyBatch(List<SensorData> readings, Collection<SensorDataRollup.Resolution> resolutions) {
+        if (readings.isEmpty()) {
+            return;
+        }
+        Timer.Sample sample = Timer.start();
+
+        // Sorted keys keep the lock order stable between batches
+        Map<BucketKey, Bucket> buckets = new TreeMap<>();
+        for (SensorData data : readings) {
+            for (SensorDataRollup.Resolution resolution : resolutions) {
+                BucketKey key = new BucketKey(data.getNodeName(), resolution,
+                        resolution.bucketStart(data.getTimestamp()));
+                buckets.computeIfAbsent(key, k -> new Bucket()).add(data);
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>(buckets.size());
+        for (Map.Entry<BucketKey, Bucket> entry : buckets.entrySet()) {
+            BucketKey key = entry.getKey();
+            Bucket bucket = entry.getValue();
+            rows.add(new Object[] {
+                    key.nodeName(), key.resolution().name(), Timestamp.valueOf(key.bucketStart()),
+                    bucket.count, bucket.distanceMin, bucket.distanceMax, bucket.distanceSum,
+                    bucket.gasMin, bucket.gasMax, bucket.gasSum, bucket.tippingCount,
+                    bucket.lastFixAt != null ? Timestamp.valueOf(bucket.lastFixAt) : null,
+                    bucket.lastLatitude, bucket.lastLongitude
+            });
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+
+        upsertCounter.increment(rows.size());
+        sample.stop(applyTimer);
+        log.debug("Applied {} readings to {} rollup buckets", readings.size(), rows.size());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SensorDataRollupResponse> getRollups(String nodeName, String resolution,
+            LocalDateTime from, LocalDateTime to) {
+        SensorDataRollup.Resolution parsed = parseResolution(resolution);
+        LocalDateTime upperBound = to != null ? to : LocalDateTime.now();
+        LocalDateTime lowerBound = from != null ? from : upperBound.minus(parsed.getDefaultWindow());
+        if (!lowerBound.isBefore(upperBound)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+
+        List<SensorDataRollup> rollups = nodeName != null && !nodeName.isBlank()
+                ? rollupRepository.findByNode(nodeName, parsed, lowerBound, upperBound, Limit.of(maxRows))
+                : rollupRepository.findAllNodes(parsed, lowerBound, upperBound, Limit.of(maxRows));
+        return rollups.stream().map(this::toResponse).toList();
+    }
+
+    private SensorDataRollup.Resolution parseResolution(String resolution) {
+        if (resolution == null || resolution.isBlank()) {
+            return SensorDataRollup.Resolution.HOUR;
+        }
+        try {
+            return SensorDataRollup.Resolution.valueOf(resolution.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("resolution must be one of MINUTE, HOUR, DAY");
+        }
+    }
+
+    private SensorDataRollupResponse toResponse(SensorDataRollup rollup) {
+        long count = rollup.getSampleCount();
+        return SensorDataRollupResponse.builder()
+                .nodeName(rollup.getId().getNodeName())
+                .resolution(rollup.getId().getResolution().name())
+                .bucketStart(rollup.getId().getBucketStart().format(formatter))
+                .count(count)
+                .distanceMin(rollup.getDistanceMin())
+                .distanceMax(rollup.getDistanceMax())
+                .distanceAvg(count > 0 ? rollup.getDistanceSum() / count : 0)
+                .gasMin(rollup.getGasMin())
+                .gasMax(rollup.getGasMax())
+                .gasAvg(count > 0 ? (double) rollup.getGasSum() / count : 0)
+                .tippingCount(rollup.getTippingCount())
+                .lastLatitude(rollup.getLastLatitude())
+                .lastLongitude(rollup.getLastLongitude())
+                .lastFixAt(rollup.getLastFixAt() != null ? rollup.getLastFixAt().format(formatter) : null)
+                .build();
+    }
+
+    private record BucketKey(String nodeName, SensorDataRollup.Resolution resolution, LocalDateTime bucketStart)
+            implements Comparable<BucketKey> {
+        @Override
+        public int compareTo(BucketKey other) {
+            int result = nodeName.compareTo(other.nodeName);
+            if (result == 0) {
+                result = resolution.compareTo(other.resolution);
+            }
+            return result != 0 ? result : bucketStart.compareTo(other.bucketStart);
+        }
+    }
+
+    private static final class Bucket {
+        private long count;
+        private double distanceMin = Double.MAX_VALUE;
+        private double distanceMax = -Double.MAX_VALUE;
+        private double distanceSum;
+        private int gasMin = Integer.MAX_VALUE;
+        private int gasMax = Integer.MIN_VALUE;
+        private long gasSum;
+        private long tippingCount;
+        private LocalDateTime lastFixAt;
+        private Double lastLatitude;
+        private Double lastLongitude;
+
+        private void add(SensorData data) {
+            count++;
+            distanceMin = Math.min(distanceMin, data.getDistance());
+            distanceMax = Math.max(distanceMax, data.getDistance());
+            distanceSum += data.getDistance();
+            gasMin = Math.min(gasMin, data.getGas());
+            gasMax = Math.max(gasMax, data.getGas());
+            gasSum += data.getGas();
+            if (data.isTipping()) {
+                tippingCount++;
+            }
+            if (data.getSatellites() > 0
+                    && (lastFixAt == null || !data.getTimestamp().isBefore(lastFixAt))) {
+                lastFixAt = data.getTimestamp();
+                lastLatitude = data.getLatitude();
+                lastLongitude = data.getLongitude();
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package com.trsang.doan2.services.implementation;
+
+import com.trsang.doan2.entities.SensorData;
+import com.trsang.doan2.repositories.IUserRepository;
+import com.trsang.doan2.services.interfaces.ISensorDataSpool;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead spool between MQTT ingest and the database writer. Readings are
+ * appended to memory-mapped segment files and forced to disk before
+ * {@link #append} returns, so nothing accepted is lost while MySQL is slow or
+ * down; the writer replays them in batches and commits a checkpoint after each
+ * insert, which deletes segments it has moved past.
+ * <p>
+ * Record layout: body length (int), CRC32C of the body (int), body. A zero
+ * length or a bad checksum marks the end of the data in a segment, which is
+ * how a torn write at a crash is cut off on recovery. Concurrent appends that
+ * arrive while a force is running are made durable by the next one (group
+ * commit). There is a single consumer, the writer's flush loop.
+ */
+@Slf4j
+@Service
+public class SensorDataSpool implements ISensorDataSpool {
+
+    private static final int HEADER_BYTES = 8;
+    // user id, timestamp, flags, device time, distance, gas, lat, lon, satellites, node name length
+    private static final int FIXED_BODY_BYTES = 16 + 12 + 1 + 8 + 8 + 4 + 8 + 8 + 4 + 2;
+    private static final int FLAG_TIPPING = 1;
+    private static final int FLAG_HUMAN = 2;
+    private static final int FLAG_DEVICE_TIME = 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final IUserRepository userRepository;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final boolean fsync;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private Segment writeSegment;
+    private long committedSegment;
+    private int committedOffset;
+
+    // Everything before this point is on disk, guarded by syncLock
+    private final Object syncLock = new Object();
+    private long syncedSegment;
+    private int syncedOffset;
+
+    private final Counter appendedCounter;
+    private final Counter fullCounter;
+    private final Counter corruptCounter;
+    private final Timer syncTimer;
+
+    public SensorDataSpool(
+            IUserRepository userRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.ingest.spool.enabled:false}") boolean enabled,
+            @Value("${app.ingest.spool.dir:data/ingest-spool}") String directory,
+            @Value("${app.ingest.spool.segment-bytes:16777216}") int segmentBytes,
+            @Value("${app.ingest.spool.max-segments:64}") int maxSegments,
+            @Value("${app.ingest.spool.fsync:true}") boolean fsync) {
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.fsync = fsync;
+
+        Gauge.builder("ingest.spool.backlog.bytes", this, ISensorDataSpool::getBacklogBytes)
+                .description("Spooled bytes not yet written to the database")
+                .register(meterRegistry);
+        Gauge.builder("ingest.spool.segments", this, spool -> spool.segmentCount())
+                .register(meterRegistry);
+        this.appendedCounter = meterRegistry.counter("ingest.spool.appended");
+        this.fullCounter = meterRegistry.counter("ingest.spool.full");
+        this.corruptCounter = meterRegistry.counter("ingest.spool.corrupt");
+        this.syncTimer = meterRegistry.timer("ingest.spool.sync");
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        long[] checkpoint = readCheckpoint();
+        committedSegment = checkpoint[0];
+        committedOffset = (int) checkpoint[1];
+
+        List<Long> ids = listSegmentIds();
+        for (long id : ids) {
+            if (id < committedSegment) {
+                Files.deleteIfExists(segmentPath(id));
+            }
+        }
+        ids.removeIf(id -> id < committedSegment);
+        if (ids.isEmpty()) {
+            ids.add(committedSegment);
+        } else if (ids.get(0) > committedSegment) {
+            committedSegment = ids.get(0);
+            committedOffset = 0;
+        }
+
+        int recovered = 0;
+        for (long id : ids) {
+            Segment segment = mapSegment(id);
+            int start = id == committedSegment ? committedOffset : 0;
+            int[] scan = scan(segment, start);
+            segment.limit = scan[0];
+            recovered += scan[1];
+            segments.put(id, segment);
+        }
+        writeSegment = segments.lastEntry().getValue();
+        // Clear a torn record so appends after it cannot be mistaken for older data
+        for (int i = writeSegment.limit; i < writeSegment.buffer.capacity(); i++) {
+            writeSegment.buffer.put(i, (byte) 0);
+        }
+        syncedSegment = writeSegment.id;
+        syncedOffset = writeSegment.limit;
+        log.info("Ingest spool opened at {} ({} segments, {} readings to replay)",
+                directory.toAbsolutePath(), segments.size(), recovered);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            writeSegment.buffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean append(SensorData sensorData) {
+        byte[] record = encode(sensorData);
+        long segmentId;
+        int end;
+        lock.lock();
+        try {
+            if (writeSegment.limit + record.length > writeSegment.buffer.capacity()) {
+                if (segments.size() >= maxSegments || record.length > segmentBytes) {
+                    fullCounter.increment();
+                    return false;
+                }
+                roll();
+            }
+            writeSegment.buffer.put(writeSegment.limit, record);
+            writeSegment.limit += record.length;
+            segmentId = writeSegment.id;
+            end = writeSegment.limit;
+            appended.signalAll();
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Could not append to ingest spool: {}", e.getMessage(), e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+        if (fsync) {
+            sync(segmentId, end);
+        }
+        appendedCounter.increment();
+        return true;
+    }
+
+    @Override
+    public Batch poll(int maxReadings, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<SensorData> readings = new ArrayList<>();
+        long segmentId;
+        int offset;
+        lock.lock();
+        try {
+            segmentId = committedSegment;
+            offset = committedOffset;
+        } finally {
+            lock.unlock();
+        }
+
+        while (readings.size() < maxReadings) {
+            Segment segment;
+            int limit;
+            lock.lock();
+            try {
+                segment = segments.get(segmentId);
+                while (segment == writeSegment && offset >= segment.limit) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return new Batch(readings, segmentId, offset);
+                    }
+                    appended.awaitNanos(remaining);
+                }
+                if (offset >= segment.limit) {
+                    // Sealed and fully read, segments are numbered without gaps
+                    segmentId = segments.higherKey(segmentId);
+                    offset = 0;
+                    continue;
+                }
+                limit = segment.limit;
+            } finally {
+                lock.unlock();
+            }
+            offset = read(segment, offset, limit, maxReadings - readings.size(), readings);
+        }
+        return new Batch(readings, segmentId, offset);
+    }
+
+    @Override
+    public void commit(Batch batch) {
+        try {
+            writeCheckpoint(batch.segment(), batch.offset());
+        } catch (IOException e) {
+            // Only costs a replay after a restart, which the idempotency check filters out
+            log.error("Could not write ingest spool checkpoint: {}", e.getMessage(), e);
+        }
+        lock.lock();
+        try {
+            committedSegment = batch.segment();
+            committedOffset = batch.offset();
+            Iterator<Segment> finished = segments.headMap(batch.segment(), false).values().iterator();
+            while (finished.hasNext()) {
+                Segment segment = finished.next();
+                finished.remove();
+                Files.deleteIfExists(segment.path);
+            }
+        } catch (IOException e) {
+            log.error("Could not delete finished spool segment: {}", e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getBacklogBytes() {
+        if (!enabled) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            long bytes = 0;
+            for (Segment segment : segments.tailMap(committedSegment, true).values()) {
+                bytes += segment.limit - (segment.id == committedSegment ? committedOffset : 0);
+            }
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int segmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void roll() throws IOException {
+        // The old segment is complete on disk before any record goes to the next one
+        writeSegment.buffer.force();
+        Segment next = mapSegment(writeSegment.id + 1);
+        segments.put(next.id, next);
+        writeSegment = next;
+    }
+
+    private void sync(long segmentId, int end) {
+        synchronized (syncLock) {
+            if (syncedSegment > segmentId || (syncedSegment == segmentId && syncedOffset >= end)) {
+                return;
+            }
+            Segment segment;
+            int limit;
+            lock.lock();
+            try {
+                segment = writeSegment;
+                limit = segment.limit;
+            } finally {
+                lock.unlock();
+            }
+            // Older segments were forced when the writer rolled past them
+            int from = syncedSegment == segment.id ? syncedOffset : 0;
+            syncTimer.record(() -> segment.buffer.force(from, limit - from));
+            syncedSegment = segment.id;
+            syncedOffset = limit;
+        }
+    }
+
+    private int read(Segment segment, int offset, int limit, int maxReadings, List<SensorData> readings) {
+        ByteBuffer buffer = segment.buffer;
+        int read = 0;
+        while (offset < limit && read < maxReadings) {
+            int length = buffer.getInt(offset);
+            byte[] body = new byte[Math.max(0, Math.min(length, limit - offset - HEADER_BYTES))];
+            buffer.get(offset + HEADER_BYTES, body);
+            if (length <= 0 || body.length != length || checksum(body) != buffer.getInt(offset + 4)) {
+                corruptCounter.increment();
+                log.error("Corrupt record in spool segment {} at offset {}, skipping the rest of it",
+                        segment.id, offset);
+                return limit;
+            }
+            readings.add(decode(body));
+            offset += HEADER_BYTES + length;
+            read++;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the end of the valid records from the given offset and how many there are
+     */
+    private int[] scan(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int records = 0;
+        while (offset + HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || length > capacity - offset - HEADER_BYTES) {
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(offset + HEADER_BYTES, body);
+            if (checksum(body) != buffer.getInt(offset + 4)) {
+                break;
+            }
+            offset += HEADER_BYTES + length;
+            records++;
+        }
+        return new int[] { offset, records };
+    }
+
+    private byte[] encode(SensorData data) {
+        byte[] node = data.getNodeName().getBytes(StandardCharsets.UTF_8);
+        int bodyLength = FIXED_BODY_BYTES + node.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.putInt(0);
+
+        // Only the id is needed, reading it does not initialize the lazy user proxy
+        UUID userId = data.getUser().getId();
+        buffer.putLong(userId.getMostSignificantBits());
+        buffer.putLong(userId.getLeastSignificantBits());
+        LocalDateTime timestamp = data.getTimestamp() != null ? data.getTimestamp() : LocalDateTime.now();
+        buffer.putLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(timestamp.getNano());
+        int flags = (data.isTipping() ? FLAG_TIPPING : 0)
+                | (data.isDetectedHuman() ? FLAG_HUMAN : 0)
+                | (data.getDeviceTime() != null ? FLAG_DEVICE_TIME : 0);
+        buffer.put((byte) flags);
+        buffer.putLong(data.getDeviceTime() != null ? data.getDeviceTime() : 0);
+        buffer.putDouble(data.getDistance());
+        buffer.putInt(data.getGas());
+        buffer.putDouble(data.getLatitude());
+        buffer.putDouble(data.getLongitude());
+        buffer.putInt(data.getSatellites());
+        buffer.putShort((short) node.length);
+        buffer.put(node);
+
+        byte[] record = buffer.array();
+        buffer.putInt(4, checksum(record, HEADER_BYTES, bodyLength));
+        return record;
+    }
+
+    private SensorData decode(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        UUID userId = new UUID(buffer.getLong(), buffer.getLong());
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        int flags = buffer.get();
+        long deviceTime = buffer.getLong();
+        SensorData.SensorDataBuilder builder = SensorData.builder()
+                .user(userRepository.getReferenceById(userId))
+                .timestamp(timestamp)
+                .isTipping((flags & FLAG_TIPPING) != 0)
+                .isDetectedHuman((flags & FLAG_HUMAN) != 0)
+                .deviceTime((flags & FLAG_DEVICE_TIME) != 0 ? deviceTime : null)
+                .distance(buffer.getDouble())
+                .gas(buffer.getInt())
+                .latitude(buffer.getDouble())
+                .longitude(buffer.getDouble())
+                .satellites(buffer.getInt());
+        byte[] node = new byte[buffer.getShort()];
+        buffer.get(node);
+        return builder.nodeName(new String(node, StandardCharsets.UTF_8)).build();
+    }
+
+    private static int checksum(byte[] bytes) {
+        return checksum(bytes, 0, bytes.length);
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private Segment mapSegment(long id) throws IOException {
+        Path path = segmentPath(id);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Keep the size of an existing segment, it may predate a segment-bytes change
+            long size = channel.size() > 0 ? channel.size() : segmentBytes;
+            return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%020d", id) + SEGMENT_SUFFIX);
+    }
+
+    private List<Long> listSegmentIds() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return new ArrayList<>(files
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList());
+        }
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return new long[] { 0, 0 };
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        return new long[] { buffer.getLong(), buffer.getInt() };
+    }
+
+    private void writeCheckpoint(long segmentId, int offset) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(12).putLong(segmentId).putInt(offset).flip());
+            channel.force(false);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        // End of the written records, guarded by the spool lock
+        private int limit;
+
+        private Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.trsang.doan2.services.implementation;
+
+import com.trsang.doan2.entities.SensorData;
+import com.trsang.doan2.repositories.ISensorDataRepository;
+import com.trsang.doan2.services.interfaces.IIngestDeduplicator;
+import com.trsang.doan2.services.interfaces.IIngestMetrics;
+import com.trsang.doan2.services.interfaces.ILatestReadingRegistry;
+import com.trsang.doan2.services.interfaces.ISensorDataRollupService;
+import com.trsang.doan2.services.interfaces.ISensorDataSpool;
+import com.trsang.doan2.services.interfaces.ISensorDataWriter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind stage for MQTT telemetry. Readings are buffered in a bounded
+ * queue and inserted in batches, so the MQTT callback thread never waits on
+ * a database round-trip unless the buffer is full.
+ * <p>
+ * With the spool enabled the buffer is the on-disk {@link ISensorDataSpool}
+ * instead: a batch is committed there only after its insert succeeds, and a
+ * batch that failed on a connection or transient error is retried with backoff
+ * until the database is back. A batch the database rejects for its content is
+ * written row by row instead, and the rows it still rejects are logged, counted
+ * as dead letters and skipped, so one bad reading cannot hold up the spool.
+ */
+@Slf4j
+@Service
+public class SensorDataWriter implements ISensorDataWriter {
+
+    private final ISensorDataRepository sensorDataRepository;
+    private final ILatestReadingRegistry latestReadingRegistry;
+    private final ISensorDataRollupService rollupService;
+    private final IIngestDeduplicator ingestDeduplicator;
+    private final ISensorDataSpool spool;
+    private final IIngestMetrics ingestMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private final BatchingWriter<SensorData> buffer;
+    private final int batchSize;
+    private final long maxLatencyMs;
+    private final long offerTimeoutMs;
+    private final long shutdownTimeoutMs;
+    private final long retryInitialMs;
+    private final long retryMaxMs;
+    // Spool batches are read from the last commit, so only one drain may run at a time
+    private final ReentrantLock spoolDrainLock = new ReentrantLock();
+
+    private final Counter enqueuedCounter;
+    private final Counter rejectedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Counter retriedCounter;
+    private final Counter deadLetterCounter;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread spoolFlusher;
+
+    public SensorDataWriter(
+            ISensorDataRepository sensorDataRepository,
+            ILatestReadingRegistry latestReadingRegistry,
+            ISensorDataRollupService rollupService,
+            IIngestDeduplicator ingestDeduplicator,
+            ISensorDataSpool spool,
+            IIngestMetrics ingestMetrics,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.ingest.writer.capacity:10000}") int capacity,
+            @Value("${app.ingest.writer.batch-size:500}") int batchSize,
+            @Value("${app.ingest.writer.max-latency-ms:500}") long maxLatencyMs,
+            @Value("${app.ingest.writer.offer-timeout-ms:100}") long offerTimeoutMs,
+            @Value("${app.ingest.writer.shutdown-timeout-ms:10000}") long shutdownTimeoutMs,
+            @Value("${app.ingest.spool.retry-initial-ms:500}") long retryInitialMs,
+            @Value("${app.ingest.spool.retry-max-ms:30000}") long retryMaxMs) {
+        this.sensorDataRepository = sensorDataRepository;
+        this.latestReadingRegistry = latestReadingRegistry;
+        this.rollupService = rollupService;
+        this.ingestDeduplicator = ingestDeduplicator;
+        this.spool = spool;
+        this.ingestMetrics = ingestMetrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.buffer = new BatchingWriter<>("sensor-data-writer", capacity, batchSize, maxLatencyMs,
+                shutdownTimeoutMs, this::writeBatch);
+        this.batchSize = batchSize;
+        this.maxLatencyMs = maxLatencyMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.retryInitialMs = retryInitialMs;
+        this.retryMaxMs = retryMaxMs;
+
+        Gauge.builder("ingest.writer.queue.size", buffer, BatchingWriter::size)
+                .description("Sensor readings waiting to be written")
+                .register(meterRegistry);
+        Gauge.builder("ingest.writer.queue.remaining", buffer, BatchingWriter::remainingCapacity)
+                .description("Free slots in the write-behind buffer")
+                .register(meterRegistry);
+        this.enqueuedCounter = meterRegistry.counter("ingest.writer.enqueued");
+        this.rejectedCounter = meterRegistry.counter("ingest.writer.rejected");
+        this.writtenCounter = meterRegistry.counter("ingest.writer.written");
+        this.failedCounter = meterRegistry.counter("ingest.writer.failed");
+        this.retriedCounter = meterRegistry.counter("ingest.writer.retried");
+        this.deadLetterCounter = meterRegistry.counter("ingest.writer.dead.letter");
+        this.flushTimer = Timer.builder("ingest.writer.flush")
+                .description("Time to write one batch, including the rollups and the duplicate check")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (spool.isEnabled()) {
+            running = true;
+            spoolFlusher = new Thread(this::runSpoolLoop, "sensor-data-writer");
+            spoolFlusher.setDaemon(true);
+            spoolFlusher.start();
+        } else {
+            buffer.start();
+        }
+        log.info("Sensor data writer started (batchSize={}, maxLatencyMs={}, spool={})",
+                batchSize, maxLatencyMs, spool.isEnabled());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (spool.isEnabled()) {
+            running = false;
+            try {
+                spoolFlusher.join(shutdownTimeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Whatever is left stays on disk and is replayed on the next start
+            log.info("Sensor data writer stopped, {} spooled bytes left for the next start",
+                    spool.getBacklogBytes());
+            return;
+        }
+        buffer.stop();
+        log.info("Sensor data writer stopped, {} readings left unwritten", buffer.size());
+    }
+
+    @Override
+    public boolean enqueue(SensorData sensorData) {
+        if (spool.isEnabled()) {
+            // Returns once the reading is on disk, the flush loop picks it up from there
+            if (spool.append(sensorData)) {
+                enqueuedCounter.increment();
+                return true;
+            }
+            rejectedCounter.increment();
+            log.warn("Ingest spool full or unwritable, dropping reading for node {}", sensorData.getNodeName());
+            return false;
+        }
+        try {
+            // Block the caller briefly when the buffer is full so the broker sees backpressure
+            if (buffer.offer(sensorData, offerTimeoutMs)) {
+                enqueuedCounter.increment();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedCounter.increment();
+        log.warn("Sensor data buffer full, dropping reading for node {}", sensorData.getNodeName());
+        return false;
+    }
+
+    @Override
+    public void flush() {
+        if (spool.isEnabled()) {
+            try {
+                while (drainSpool(0) > 0) {
+                    // Keep going until the spool is empty or a batch fails
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        buffer.flush();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return buffer.size();
+    }
+
+    private void runSpoolLoop() {
+        long backoffMs = 0;
+        while (running) {
+            try {
+                if (backoffMs > 0) {
+                    pause(backoffMs);
+                }
+                int written = drainSpool(maxLatencyMs);
+                if (written >= 0) {
+                    backoffMs = 0;
+                } else {
+                    backoffMs = backoffMs == 0 ? retryInitialMs : Math.min(backoffMs * 2, retryMaxMs);
+                    log.warn("Spooled batch not written, retrying in {} ms ({} bytes spooled)",
+                            backoffMs, spool.getBacklogBytes());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error in sensor data writer: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes one spooled batch, returns its size or -1 if the insert failed and must be retried
+     */
+    private int drainSpool(long timeoutMs) throws InterruptedException {
+        spoolDrainLock.lock();
+        try {
+            ISensorDataSpool.Batch batch = spool.poll(batchSize, timeoutMs);
+            if (batch.readings().isEmpty()) {
+                return 0;
+            }
+            if (!writeBatch(batch.readings())) {
+                return -1;
+            }
+            spool.commit(batch);
+            return batch.readings().size();
+        } finally {
+            spoolDrainLock.unlock();
+        }
+    }
+
+    private void pause(long millis) throws InterruptedException {
+        // Sleep in short steps so shutdown is not held up by a long backoff
+        long deadline = System.currentTimeMillis() + millis;
+        while (running && System.currentTimeMillis() < deadline) {
+            Thread.sleep(Math.min(maxLatencyMs, Math.max(1, deadline - System.currentTimeMillis())));
+        }
+    }
+
+    /**
+     * Returns false if the batch, or part of it, hit a connection or transient error and was not written
+     */
+    private boolean writeBatch(List<SensorData> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        Timer.Sample sample = Timer.start();
+        List<SensorData> rows = batch;
+        try {
+            // Redeliveries that another instance or an earlier run already stored
+            rows = ingestDeduplicator.dropPersisted(batch);
+            if (rows.isEmpty()) {
+                return true;
+            }
+            insert(rows);
+            return true;
+        } catch (Exception e) {
+            if (isRetryable(e)) {
+                return notWritten(rows, e);
+            }
+            // One bad reading must not take the rest of the batch down with it
+            log.warn("Batch of {} sensor readings rejected ({}), retrying row by row", rows.size(), e.getMessage());
+            return writeRowByRow(rows);
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    private void insert(List<SensorData> rows) {
+        // Rollups commit with the raw rows, so a failed batch leaves neither behind
+        transactionTemplate.executeWithoutResult(status -> {
+            sensorDataRepository.saveAll(rows);
+            rollupService.applyBatch(rows);
+        });
+        writtenCounter.increment(rows.size());
+        ingestMetrics.readingsCommitted(rows);
+        latestReadingRegistry.updateAll(rows);
+        log.debug("Wrote batch of {} sensor readings", rows.size());
+    }
+
+    private boolean writeRowByRow(List<SensorData> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            SensorData row = rows.get(i);
+            // The rolled back attempt already assigned an id, a non-null id would make save() merge
+            row.setId(null);
+            try {
+                insert(List.of(row));
+            } catch (Exception e) {
+                if (isRetryable(e)) {
+                    // The rows written so far are skipped by the duplicate check when the batch comes back
+                    return notWritten(rows.subList(i, rows.size()), e);
+                }
+                deadLetterCounter.increment();
+                log.error("Dead letter: dropping sensor reading for node {} (device time {}): {}",
+                        row.getNodeName(), row.getDeviceTime(), e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private boolean notWritten(List<SensorData> rows, Exception e) {
+        if (spool.isEnabled()) {
+            retriedCounter.increment(rows.size());
+            log.warn("Could not write {} spooled sensor readings, keeping them for a retry: {}",
+                    rows.size(), e.getMessage());
+        } else {
+            failedCounter.increment(rows.size());
+            log.error("Error writing batch of {} sensor readings: {}", rows.size(), e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Lost or busy connections, lock timeouts and deadlocks; anything else is about the rows themselves
+     */
+    private static boolean isRetryable(Exception e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof NonTransientDataAccessResourceException
+                || e instanceof TransactionException;
+    }
+}
@@ -1,55 +1,637 @@
 package com.trsang.doan2.services.implementation;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+import com.trsang.doan2.dtos.requests.WebSocketSubscriptionRequest;
+import com.trsang.doan2.dtos.requests.WebSocketSubscriptionRequest.GeoBox;
 import com.trsang.doan2.dtos.responses.WebSocketMessageResponse;
+import com.trsang.doan2.dtos.responses.WebSocketSessionStats;
 import com.trsang.doan2.services.interfaces.ISocketService;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
-import java.io.IOException;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * Broadcasts to the plain WebSocket clients. A message is serialized once into
+ * a single immutable frame; each session has its own bounded outbox drained by
+ * one virtual thread, so a slow browser only delays itself. Sessions whose
+ * outbox grows past the frame, byte or lag limit are closed.
+ * <p>
+ * Clients narrow what they receive with subscribe/unsubscribe frames (topic
+ * filters, node names, geo boxes). Recipients are looked up through the
+ * subscription indexes, so a message costs nothing for sessions that do not
+ * want it. Sessions that never subscribed keep receiving every message.
+ * <p>
+ * Sessions that negotiated the binary subprotocol get telemetry as compact
+ * {@link TelemetryFrameEncoder} frames; the JSON and binary forms of an update
+ * are each built at most once, and only if some recipient needs them.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class SocketService implements ISocketService {
 
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private static final String ACK_TOPIC = "$subscriptions";
+    private static final String ERROR_TOPIC = "$error";
+
+    private final Map<String, Outbox> sessions = new ConcurrentHashMap<>();
+
+    // Subscription indexes, only modified while holding subscriptionLock
+    private final Object subscriptionLock = new Object();
+    private final Set<Outbox> unfiltered = ConcurrentHashMap.newKeySet();
+    private final TopicTrie<Outbox> topicIndex = new TopicTrie<>();
+    private final Map<String, Set<Outbox>> nodeIndex = new ConcurrentHashMap<>();
+    private final Set<Outbox> geoSubscribers = ConcurrentHashMap.newKeySet();
+
+    // Last state pushed per topic, the base that deltas are computed against
+    private final Map<String, VersionedState> lastStates = new ConcurrentHashMap<>();
+
     private final ObjectMapper objectMapper;
+    private final TelemetryFrameEncoder frameEncoder;
+    private final ExecutorService sendExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ws-send-", 0).factory());
+    private final int maxQueuedFrames;
+    private final long maxQueuedBytes;
+    private final long maxLagNanos;
+    private final int maxSubscriptions;
+
+    private final Counter framesSentCounter;
+    private final Counter unroutedCounter;
+    private final Counter evictedCounter;
+    private final Timer sendLagTimer;
+
+    public SocketService(
+            ObjectMapper objectMapper,
+            TelemetryFrameEncoder frameEncoder,
+            MeterRegistry meterRegistry,
+            @Value("${app.websocket.outbound.max-queued-frames:1000}") int maxQueuedFrames,
+            @Value("${app.websocket.outbound.max-queued-bytes:1048576}") long maxQueuedBytes,
+            @Value("${app.websocket.outbound.max-lag-ms:10000}") long maxLagMs,
+            @Value("${app.websocket.subscriptions.max-per-session:100}") int maxSubscriptions) {
+        this.objectMapper = objectMapper;
+        this.frameEncoder = frameEncoder;
+        this.maxQueuedFrames = maxQueuedFrames;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMs);
+        this.maxSubscriptions = maxSubscriptions;
+
+        Gauge.builder("websocket.sessions", sessions, Map::size)
+                .description("Open plain WebSocket sessions")
+                .register(meterRegistry);
+        Gauge.builder("websocket.outbound.max.lag", this, SocketService::maxLagMs)
+                .description("Lag of the slowest WebSocket session")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.framesSentCounter = meterRegistry.counter("websocket.frames.sent");
+        this.unroutedCounter = meterRegistry.counter("websocket.messages.unrouted");
+        this.evictedCounter = meterRegistry.counter("websocket.sessions.evicted");
+        this.sendLagTimer = Timer.builder("websocket.send.lag")
+                .description("Time from broadcast to the frame being written to a session")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdownNow();
+    }
 
     @Override
     public void addSession(WebSocketSession session) {
-        sessions.put(session.getId(), session);
+        Outbox outbox = new Outbox(session);
+        sessions.put(session.getId(), outbox);
+        unfiltered.add(outbox);
     }
 
     @Override
     public void removeSession(WebSocketSession session) {
-        sessions.remove(session.getId());
+        Outbox outbox = sessions.remove(session.getId());
+        if (outbox != null) {
+            outbox.close();
+            unregister(outbox);
+        }
     }
 
     @Override
     public void sendMessage(String topic, Object data) {
+        sendMessage(topic, data, null);
+    }
+
+    @Override
+    public void sendMessage(String topic, Object data, Supplier<TelemetryReading> reading) {
+        reading = memoize(reading);
+        Set<Outbox> recipients = findRecipients(topic, reading);
+        if (recipients.isEmpty()) {
+            // Nobody wants it, skip serialization entirely
+            unroutedCounter.increment();
+            return;
+        }
+        BinaryEncoding binary = new BinaryEncoding(topic, reading);
+        TextMessage frame = null;
+        for (Outbox outbox : recipients) {
+            if (outbox.binary && binary.offerTo(outbox)) {
+                continue;
+            }
+            if (frame == null) {
+                frame = toFrame(topic, data);
+                if (frame == null) {
+                    return;
+                }
+            }
+            outbox.offer(frame);
+        }
+    }
+
+    @Override
+    public void sendState(String topic, Map<String, Object> state, Supplier<TelemetryReading> reading) {
+        reading = memoize(reading);
+        VersionedState[] previous = {null};
+        VersionedState current = lastStates.compute(topic, (t, old) -> {
+            previous[0] = old;
+            return new VersionedState(old != null ? old.version() + 1 : 1, state);
+        });
+
+        Set<Outbox> recipients = findRecipients(topic, reading);
+        if (recipients.isEmpty()) {
+            unroutedCounter.increment();
+            return;
+        }
+        // At most two text frames per update: the full state and the delta, each serialized once
+        BinaryEncoding binary = new BinaryEncoding(topic, reading);
+        TextMessage fullFrame = null;
+        TextMessage deltaFrame = null;
+        for (Outbox outbox : recipients) {
+            if (outbox.binary && binary.offerTo(outbox)) {
+                continue;
+            }
+            Long seen = outbox.stateVersions.put(topic, current.version());
+            if (previous[0] != null && seen != null && seen == previous[0].version()) {
+                if (deltaFrame == null) {
+                    deltaFrame = toFrame(topic, diff(previous[0].state(), state), true);
+                }
+                outbox.offer(deltaFrame);
+            } else {
+                if (fullFrame == null) {
+                    fullFrame = toFrame(topic, state, null);
+                }
+                outbox.offer(fullFrame);
+            }
+        }
+    }
+
+    @Override
+    public void handleClientMessage(WebSocketSession session, String payload) {
+        Outbox outbox = sessions.get(session.getId());
+        if (outbox == null) {
+            return;
+        }
+        try {
+            WebSocketSubscriptionRequest request = objectMapper.readValue(payload, WebSocketSubscriptionRequest.class);
+            if (WebSocketSubscriptionRequest.SUBSCRIBE.equals(request.getType())) {
+                subscribe(outbox, request);
+            } else if (WebSocketSubscriptionRequest.UNSUBSCRIBE.equals(request.getType())) {
+                unsubscribe(outbox, request);
+            } else {
+                throw new IllegalArgumentException("Unknown message type: " + request.getType());
+            }
+            reply(outbox, ACK_TOPIC, outbox.describe());
+        } catch (JsonProcessingException e) {
+            reply(outbox, ERROR_TOPIC, "Invalid subscription message");
+        } catch (IllegalArgumentException e) {
+            reply(outbox, ERROR_TOPIC, e.getMessage());
+        }
+    }
+
+    @Override
+    public List<WebSocketSessionStats> getSessionStats() {
+        long now = System.nanoTime();
+        return sessions.values().stream()
+                .map(outbox -> WebSocketSessionStats.builder()
+                        .sessionId(outbox.session.getId())
+                        .remoteAddress(String.valueOf(outbox.session.getRemoteAddress()))
+                        .queuedFrames(outbox.queuedFrames.get())
+                        .queuedBytes(outbox.queuedBytes.get())
+                        .lagMs(TimeUnit.NANOSECONDS.toMillis(outbox.lagNanos(now)))
+                        .sentFrames(outbox.sentFrames.get())
+                        .protocol(outbox.session.getAcceptedProtocol())
+                        .filtered(outbox.filtered)
+                        .subscriptions(outbox.subscriptionCount())
+                        .build())
+                .toList();
+    }
+
+    private Set<Outbox> findRecipients(String topic, Supplier<TelemetryReading> reading) {
+        Set<Outbox> recipients = new HashSet<>(unfiltered);
+        if (!topicIndex.isEmpty()) {
+            topicIndex.match(topic, recipients::add);
+        }
+        if (!nodeIndex.isEmpty()) {
+            Set<Outbox> byNode = nodeIndex.get(nodeFromTopic(topic));
+            if (byNode != null) {
+                recipients.addAll(byNode);
+            }
+        }
+        if (reading != null && !geoSubscribers.isEmpty()) {
+            TelemetryReading position = reading.get();
+            if (position != null) {
+                for (Outbox outbox : geoSubscribers) {
+                    if (outbox.inAnyBox(position.latitude(), position.longitude())) {
+                        recipients.add(outbox);
+                    }
+                }
+            }
+        }
+        return recipients;
+    }
+
+    private void subscribe(Outbox outbox, WebSocketSubscriptionRequest request) {
+        List<String> topics = orEmpty(request.getTopics());
+        List<String> nodes = orEmpty(request.getNodes());
+        List<GeoBox> boxes = orEmpty(request.getBoxes());
+        for (String topic : topics) {
+            if (!TopicTrie.isValidFilter(topic)) {
+                throw new IllegalArgumentException("Invalid topic filter: " + topic);
+            }
+        }
+        for (String node : nodes) {
+            if (node == null || node.isBlank() || node.contains("/")) {
+                throw new IllegalArgumentException("Invalid node name: " + node);
+            }
+        }
+        for (GeoBox box : boxes) {
+            if (box == null || !box.hasValidBounds()) {
+                throw new IllegalArgumentException("Invalid geo box: " + box);
+            }
+        }
+
+        synchronized (subscriptionLock) {
+            if (outbox.subscriptionCount() + topics.size() + nodes.size() + boxes.size() > maxSubscriptions) {
+                throw new IllegalArgumentException("At most " + maxSubscriptions + " subscriptions per session");
+            }
+            if (outbox.closed) {
+                return;
+            }
+            // The first subscribe switches the session from "everything" to filtered delivery
+            outbox.filtered = true;
+            unfiltered.remove(outbox);
+            for (String topic : topics) {
+                if (outbox.topics.add(topic)) {
+                    topicIndex.add(topic, outbox);
+                }
+            }
+            for (String node : nodes) {
+                if (outbox.nodes.add(node)) {
+                    nodeIndex.computeIfAbsent(node, n -> ConcurrentHashMap.newKeySet()).add(outbox);
+                }
+            }
+            outbox.boxes.addAll(boxes);
+            if (!outbox.boxes.isEmpty()) {
+                geoSubscribers.add(outbox);
+            }
+        }
+    }
+
+    private void unsubscribe(Outbox outbox, WebSocketSubscriptionRequest request) {
+        List<String> topics = orEmpty(request.getTopics());
+        List<String> nodes = orEmpty(request.getNodes());
+        List<GeoBox> boxes = orEmpty(request.getBoxes());
+
+        synchronized (subscriptionLock) {
+            // An empty unsubscribe drops everything; the session stays filtered and receives nothing
+            if (topics.isEmpty() && nodes.isEmpty() && boxes.isEmpty()) {
+                clearSubscriptions(outbox);
+                return;
+            }
+            for (String topic : topics) {
+                if (outbox.topics.remove(topic)) {
+                    topicIndex.remove(topic, outbox);
+                }
+            }
+            for (String node : nodes) {
+                if (outbox.nodes.remove(node)) {
+                    removeFromNodeIndex(node, outbox);
+                }
+            }
+            outbox.boxes.removeAll(boxes);
+            if (outbox.boxes.isEmpty()) {
+                geoSubscribers.remove(outbox);
+            }
+        }
+    }
+
+    private void unregister(Outbox outbox) {
+        synchronized (subscriptionLock) {
+            unfiltered.remove(outbox);
+            clearSubscriptions(outbox);
+        }
+    }
+
+    private void clearSubscriptions(Outbox outbox) {
+        for (String topic : outbox.topics) {
+            topicIndex.remove(topic, outbox);
+        }
+        for (String node : outbox.nodes) {
+            removeFromNodeIndex(node, outbox);
+        }
+        outbox.topics.clear();
+        outbox.nodes.clear();
+        outbox.boxes.clear();
+        geoSubscribers.remove(outbox);
+    }
+
+    private void removeFromNodeIndex(String node, Outbox outbox) {
+        Set<Outbox> subscribers = nodeIndex.get(node);
+        if (subscribers != null && subscribers.remove(outbox) && subscribers.isEmpty()) {
+            nodeIndex.remove(node);
+        }
+    }
+
+    private void reply(Outbox outbox, String topic, Object data) {
+        TextMessage frame = toFrame(topic, data);
+        if (frame != null) {
+            outbox.offer(frame);
+        }
+    }
+
+    private TextMessage toFrame(String topic, Object data) {
+        return toFrame(topic, data, null);
+    }
+
+    private TextMessage toFrame(String topic, Object data, Boolean delta) {
         WebSocketMessageResponse message = WebSocketMessageResponse.builder()
                 .topic(topic)
                 .message(data)
                 .timestamp(Instant.now().toString())
+                .delta(delta)
                 .build();
-
         try {
-            String jsonMessage = objectMapper.writeValueAsString(message);
-            for (WebSocketSession session : sessions.values()) {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(jsonMessage));
+            return new TextMessage(objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing websocket message", e);
+            return null;
+        }
+    }
+
+    /**
+     * Fields that changed or appeared; removed fields are sent as null
+     */
+    private static Map<String, Object> diff(Map<String, Object> before, Map<String, Object> after) {
+        Map<String, Object> changed = new HashMap<>();
+        for (Map.Entry<String, Object> entry : after.entrySet()) {
+            if (!Objects.equals(before.get(entry.getKey()), entry.getValue())) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                changed.put(key, null);
+            }
+        }
+        return changed;
+    }
+
+    private static Supplier<TelemetryReading> memoize(Supplier<TelemetryReading> reading) {
+        if (reading == null) {
+            return null;
+        }
+        // Geo matching and binary encoding share one parse of the payload
+        TelemetryReading[] parsed = {null};
+        boolean[] done = {false};
+        return () -> {
+            if (!done[0]) {
+                parsed[0] = reading.get();
+                done[0] = true;
+            }
+            return parsed[0];
+        };
+    }
+
+    private static <T> List<T> orEmpty(List<T> values) {
+        return values != null ? values : List.of();
+    }
+
+    /**
+     * Node level of a telemetry topic: smarttrash/node1/data -> node1
+     */
+    private static String nodeFromTopic(String topic) {
+        int start = topic.indexOf('/');
+        if (start < 0) {
+            return "";
+        }
+        int end = topic.indexOf('/', start + 1);
+        return end < 0 ? topic.substring(start + 1) : topic.substring(start + 1, end);
+    }
+
+    private double maxLagMs() {
+        long now = System.nanoTime();
+        return sessions.values().stream()
+                .mapToLong(outbox -> TimeUnit.NANOSECONDS.toMillis(outbox.lagNanos(now)))
+                .max()
+                .orElse(0);
+    }
+
+    private void evict(Outbox outbox, String reason) {
+        if (!sessions.remove(outbox.session.getId(), outbox)) {
+            return;
+        }
+        outbox.close();
+        unregister(outbox);
+        evictedCounter.increment();
+        log.warn("Closing slow websocket session {} ({})", outbox.session.getId(), reason);
+        // Closing may block on the same stalled socket, keep it off the caller
+        sendExecutor.execute(() -> {
+            try {
+                outbox.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (Exception e) {
+                log.debug("Error closing websocket session {}: {}", outbox.session.getId(), e.getMessage());
+            }
+        });
+    }
+
+    private record Pending(WebSocketMessage<?> frame, long enqueuedAt) {
+    }
+
+    /**
+     * Binary form of one update, encoded on first use. Each session gets its own
+     * BinaryMessage because sending consumes the wrapped buffer.
+     */
+    private final class BinaryEncoding {
+        private final String topic;
+        private final Supplier<TelemetryReading> reading;
+        private byte[] bytes;
+        private boolean encoded;
+
+        private BinaryEncoding(String topic, Supplier<TelemetryReading> reading) {
+            this.topic = topic;
+            this.reading = reading;
+        }
+
+        /**
+         * Returns false when the update has no parsable reading, the caller then falls back to JSON
+         */
+        private boolean offerTo(Outbox outbox) {
+            if (!encoded) {
+                encoded = true;
+                TelemetryReading parsed = reading != null ? reading.get() : null;
+                if (parsed != null) {
+                    String nodeName = parsed.nodeName() != null ? parsed.nodeName() : nodeFromTopic(topic);
+                    bytes = frameEncoder.encode(nodeName, parsed, System.currentTimeMillis());
+                }
+            }
+            if (bytes == null) {
+                return false;
+            }
+            outbox.offer(new BinaryMessage(bytes));
+            return true;
+        }
+    }
+
+    private record VersionedState(long version, Map<String, Object> state) {
+    }
+
+    /**
+     * Frames waiting for one session. Only one drain task runs at a time, which
+     * keeps frames in order and satisfies the one-sender-per-session rule.
+     */
+    private final class Outbox {
+        private final WebSocketSession session;
+        private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedFrames = new AtomicInteger();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private final AtomicLong sentFrames = new AtomicLong();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+        private final boolean binary;
+
+        // Written under subscriptionLock; boxes are also read by the publishing threads
+        private final Set<String> topics = ConcurrentHashMap.newKeySet();
+        private final Set<String> nodes = ConcurrentHashMap.newKeySet();
+        private final Set<GeoBox> boxes = new CopyOnWriteArraySet<>();
+        private volatile boolean filtered;
+        // Version of the last state this session received per topic
+        private final Map<String, Long> stateVersions = new ConcurrentHashMap<>();
+
+        private Outbox(WebSocketSession session) {
+            this.session = session;
+            this.binary = TelemetryFrameEncoder.PROTOCOL_BINARY.equals(session.getAcceptedProtocol());
+        }
+
+        private void offer(WebSocketMessage<?> frame) {
+            if (closed) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (queuedFrames.get() >= maxQueuedFrames) {
+                evict(this, queuedFrames.get() + " frames queued");
+                return;
+            }
+            if (queuedBytes.get() + frame.getPayloadLength() > maxQueuedBytes) {
+                evict(this, queuedBytes.get() + " bytes queued");
+                return;
+            }
+            if (lagNanos(now) > maxLagNanos) {
+                evict(this, TimeUnit.NANOSECONDS.toMillis(lagNanos(now)) + " ms behind");
+                return;
+            }
+
+            queue.add(new Pending(frame, now));
+            queuedFrames.incrementAndGet();
+            queuedBytes.addAndGet(frame.getPayloadLength());
+            if (draining.compareAndSet(false, true)) {
+                sendExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!closed) {
+                    Pending pending = queue.poll();
+                    if (pending == null) {
+                        draining.set(false);
+                        // A frame offered after the poll but before the flag was cleared still needs a drainer
+                        if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    queuedFrames.decrementAndGet();
+                    queuedBytes.addAndGet(-pending.frame().getPayloadLength());
+                    if (!session.isOpen()) {
+                        removeSession(session);
+                        return;
+                    }
+                    session.sendMessage(pending.frame());
+                    sentFrames.incrementAndGet();
+                    framesSentCounter.increment();
+                    sendLagTimer.record(System.nanoTime() - pending.enqueuedAt(), TimeUnit.NANOSECONDS);
                 }
+            } catch (Exception e) {
+                evict(this, "send failed: " + e.getMessage());
             }
-        } catch (IOException e) {
-            log.error("Error sending message to websocket", e);
+        }
+
+        private boolean inAnyBox(double latitude, double longitude) {
+            for (GeoBox box : boxes) {
+                if (box.contains(latitude, longitude)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int subscriptionCount() {
+            return topics.size() + nodes.size() + boxes.size();
+        }
+
+        private Map<String, Object> describe() {
+            Map<String, Object> subscriptions = new LinkedHashMap<>();
+            subscriptions.put("filtered", filtered);
+            subscriptions.put("topics", List.copyOf(topics));
+            subscriptions.put("nodes", List.copyOf(nodes));
+            subscriptions.put("boxes", List.copyOf(boxes));
+            return subscriptions;
+        }
+
+        private long lagNanos(long now) {
+            Pending head = queue.peek();
+            return head != null ? now - head.enqueuedAt() : 0;
+        }
+
+        private void close() {
+            closed = true;
+            queue.clear();
+            queuedFrames.set(0);
+            queuedBytes.set(0);
         }
     }
 }
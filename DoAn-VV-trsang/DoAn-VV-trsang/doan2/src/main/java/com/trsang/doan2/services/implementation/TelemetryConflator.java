@@ -0,0 +1,194 @@
+package com.trsang.doan2.services.implementation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+import com.trsang.doan2.services.interfaces.ISocketService;
+import com.trsang.doan2.services.interfaces.ITelemetryConflator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-node conflation in front of the WebSocket broadcast. Each topic (one per
+ * node) pushes at most once per window: the first message after a quiet window
+ * goes out immediately, later ones only replace the pending update, and a
+ * ticker pushes whatever is pending once the window has passed. A replayed
+ * backlog of thousands of frames therefore reaches browsers as one update per
+ * node per window.
+ */
+@Slf4j
+@Service
+public class TelemetryConflator implements ITelemetryConflator {
+
+    private static final TypeReference<Map<String, Object>> STATE_TYPE = new TypeReference<>() {
+    };
+
+    private final ISocketService socketService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean delta;
+    private final long windowMs;
+    private final long windowNanos;
+    private final Map<String, NodeState> states = new ConcurrentHashMap<>();
+
+    private final Counter pushedCounter;
+    private final Counter coalescedCounter;
+
+    private ScheduledExecutorService ticker;
+
+    public TelemetryConflator(
+            ISocketService socketService,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.websocket.conflation.enabled:true}") boolean enabled,
+            @Value("${app.websocket.conflation.window-ms:500}") long windowMs,
+            @Value("${app.websocket.conflation.delta:false}") boolean delta) {
+        this.socketService = socketService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.delta = delta;
+        this.windowMs = windowMs;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+
+        Gauge.builder("websocket.conflation.pending", this, TelemetryConflator::getPendingCount)
+                .description("Nodes with a telemetry update waiting for the next tick")
+                .register(meterRegistry);
+        this.pushedCounter = meterRegistry.counter("websocket.conflation.pushed");
+        this.coalescedCounter = meterRegistry.counter("websocket.conflation.coalesced");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-conflation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Ticking faster than the window keeps the trailing push close to the window edge
+        long tickMs = Math.max(windowMs / 4, 10);
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        log.info("Telemetry conflation started (windowMs={}, delta={})", windowMs, delta);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    @Override
+    public void submit(String topic, Object payload, Supplier<TelemetryReading> reading) {
+        Update update = new Update(payload, reading);
+        if (!enabled) {
+            push(topic, update);
+            return;
+        }
+
+        long now = System.nanoTime();
+        boolean[] pushNow = {false};
+        states.compute(topic, (t, state) -> {
+            if (state == null) {
+                state = new NodeState(now - windowNanos);
+            }
+            if (state.pending == null && now - state.lastPushedAt >= windowNanos) {
+                state.lastPushedAt = now;
+                pushNow[0] = true;
+            } else {
+                if (state.pending != null) {
+                    coalescedCounter.increment();
+                }
+                state.pending = update;
+            }
+            return state;
+        });
+        if (pushNow[0]) {
+            push(topic, update);
+        }
+    }
+
+    @Override
+    public int getPendingCount() {
+        int pending = 0;
+        for (NodeState state : states.values()) {
+            if (state.pending != null) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            for (String topic : states.keySet()) {
+                Update[] due = {null};
+                states.computeIfPresent(topic, (t, state) -> {
+                    if (now - state.lastPushedAt < windowNanos) {
+                        return state;
+                    }
+                    if (state.pending == null) {
+                        // Quiet for a whole window, the next message is pushed straight away anyway
+                        return null;
+                    }
+                    due[0] = state.pending;
+                    state.pending = null;
+                    state.lastPushedAt = now;
+                    return state;
+                });
+                if (due[0] != null) {
+                    push(topic, due[0]);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error pushing conflated telemetry: {}", e.getMessage(), e);
+        }
+    }
+
+    private void push(String topic, Update update) {
+        pushedCounter.increment();
+        if (delta && update.payload() instanceof String json) {
+            try {
+                socketService.sendState(topic, objectMapper.readValue(json, STATE_TYPE), update.reading());
+                return;
+            } catch (JsonProcessingException e) {
+                log.debug("Telemetry on {} is not a JSON object, sending it whole: {}", topic, e.getMessage());
+            }
+        }
+        socketService.sendMessage(topic, update.payload(), update.reading());
+    }
+
+    private record Update(Object payload, Supplier<TelemetryReading> reading) {
+    }
+
+    /**
+     * Only modified inside ConcurrentHashMap.compute, which serializes access per topic
+     */
+    private static final class NodeState {
+        private long lastPushedAt;
+        private volatile Update pending;
+
+        private NodeState(long lastPushedAt) {
+            this.lastPushedAt = lastPushedAt;
+        }
+    }
+}
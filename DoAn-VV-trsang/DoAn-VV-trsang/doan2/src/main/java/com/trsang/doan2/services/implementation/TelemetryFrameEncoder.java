@@ -0,0 +1,77 @@
+package com.trsang.doan2.services.implementation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.stereotype.Component;
+
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+
+/**
+ * Compact binary form of a live telemetry update, sent to /ws-plain clients
+ * that negotiate the {@value #PROTOCOL_BINARY} subprotocol. All numbers are
+ * little-endian so browsers can read them with a DataView:
+ * <pre>
+ * offset  size  field
+ * 0       1     frame type (1 = telemetry)
+ * 1       1     flags (bit 0 = tipping)
+ * 2       1     node name length n
+ * 3       n     node name, UTF-8, cut to 255 bytes at a character boundary
+ * 3+n     8     server time, epoch ms (int64)
+ * 11+n    8     device time "t" (int64)
+ * 19+n    4     distance / fill in cm (float32)
+ * 23+n    4     gas (int32)
+ * 27+n    4     latitude (float32)
+ * 31+n    4     longitude (float32)
+ * 35+n    1     satellites (uint8)
+ * </pre>
+ * Control messages ($subscriptions, $error) stay JSON text frames.
+ */
+@Component
+public class TelemetryFrameEncoder {
+
+    public static final String PROTOCOL_JSON = "smarttrash.json.v1";
+    public static final String PROTOCOL_BINARY = "smarttrash.binary.v1";
+
+    static final byte TYPE_TELEMETRY = 1;
+    static final int FLAG_TIPPING = 1;
+
+    private static final int FIXED_SIZE = 36;
+    private static final int MAX_NODE_NAME_BYTES = 255;
+
+    public byte[] encode(String nodeName, TelemetryReading reading, long serverTimeMs) {
+        byte[] name = nodeName.getBytes(StandardCharsets.UTF_8);
+        int nameLength = truncatedLength(name);
+
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + nameLength).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(TYPE_TELEMETRY);
+        buffer.put((byte) (reading.isTipping() ? FLAG_TIPPING : 0));
+        buffer.put((byte) nameLength);
+        buffer.put(name, 0, nameLength);
+        buffer.putLong(serverTimeMs);
+        buffer.putLong(reading.deviceTime());
+        buffer.putFloat((float) reading.distance());
+        buffer.putInt(reading.gas());
+        buffer.putFloat((float) reading.latitude());
+        buffer.putFloat((float) reading.longitude());
+        buffer.put((byte) Math.min(Math.max(reading.satellites(), 0), 255));
+        return buffer.array();
+    }
+
+    /**
+     * Longest prefix of at most {@value #MAX_NODE_NAME_BYTES} bytes that ends on a
+     * character boundary, so a cut name still decodes as valid UTF-8
+     */
+    private static int truncatedLength(byte[] name) {
+        if (name.length <= MAX_NODE_NAME_BYTES) {
+            return name.length;
+        }
+        int length = MAX_NODE_NAME_BYTES;
+        // Step back over continuation bytes (10xxxxxx) to the start of the character that was cut
+        while (length > 0 && (name[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,76 @@
+package com.trsang.doan2.services.implementation;
+
+import java.io.IOException;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+
+/**
+ * Token-stream parser for the fixed node telemetry schema. Reads the MQTT
+ * payload bytes directly, without building a String or a JsonNode tree.
+ */
+@Component
+public class TelemetryParser {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * Parse a telemetry payload; fields that are missing keep the same defaults
+     * the tree-based parser used (0 / not tipping). nodeName is null when "n" is absent.
+     */
+    public TelemetryReading parse(byte[] payload) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Telemetry payload must be a JSON object");
+            }
+
+            String nodeName = null;
+            long deviceTime = 0;
+            double ax = 0, ay = 0, az = 0;
+            boolean hasAx = false, hasAy = false, hasAz = false;
+            int gas = 0;
+            double distance = 0;
+            double latitude = 0, longitude = 0;
+            int satellites = 0;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "n" -> nodeName = parser.getValueAsString();
+                    case "t" -> deviceTime = parser.getValueAsLong();
+                    case "ax" -> {
+                        ax = parser.getValueAsDouble();
+                        hasAx = true;
+                    }
+                    case "ay" -> {
+                        ay = parser.getValueAsDouble();
+                        hasAy = true;
+                    }
+                    case "az" -> {
+                        az = parser.getValueAsDouble();
+                        hasAz = true;
+                    }
+                    case "g" -> gas = parser.getValueAsInt();
+                    case "trash" -> distance = parser.getValueAsDouble();
+                    case "lat" -> latitude = parser.getValueAsDouble();
+                    case "lon" -> longitude = parser.getValueAsDouble();
+                    case "sat" -> satellites = parser.getValueAsInt();
+                    default -> {
+                    }
+                }
+                // An object or array (unknown field, or a known one with the wrong shape) is skipped
+                // whole, otherwise its nested END_OBJECT would end the loop and drop later fields
+                parser.skipChildren();
+            }
+
+            return new TelemetryReading(nodeName, deviceTime, ax, ay, az, hasAx && hasAy && hasAz,
+                    gas, distance, latitude, longitude, satellites);
+        }
+    }
+}
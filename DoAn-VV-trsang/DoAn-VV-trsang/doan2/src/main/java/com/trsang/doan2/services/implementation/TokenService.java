@@ -6,6 +6,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import javax.crypto.SecretKey;
@@ -20,9 +21,11 @@ import com.trsang.doan2.config.JwtConfig;
 import org.springframework.security.core.userdetails.User;
 import com.trsang.doan2.security.UserDetailsImpl;
 import com.trsang.doan2.services.interfaces.ITokenService;
+import com.trsang.doan2.services.interfaces.IVerifiedTokenCache;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
@@ -36,9 +39,18 @@ import lombok.extern.slf4j.Slf4j;
 public class TokenService implements ITokenService {
 
     private final JwtConfig jwtConfig;
+    // Decoded once, the parser is immutable and thread-safe so every request shares it
+    private final SecretKey signingKey;
+    private final JwtParser jwtParser;
+    private final IVerifiedTokenCache verifiedTokenCache;
 
-    public TokenService(JwtConfig jwtConfig) {
+    public TokenService(JwtConfig jwtConfig, IVerifiedTokenCache verifiedTokenCache) {
         this.jwtConfig = jwtConfig;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtConfig.getSecret()));
+        this.jwtParser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
     }
 
     @Override
@@ -62,28 +74,65 @@ public class TokenService implements ITokenService {
                 .subject(userPrincipal.getUsername())
                 .issuedAt(new Date())
                 .expiration(new Date(System.currentTimeMillis() + expirationMs))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
     @Override
     public String getUsernameFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
+        return jwtParser.parseSignedClaims(token)
                 .getPayload()
                 .getSubject();
     }
 
     @Override
     public boolean validateToken(String token) {
+        return parseClaims(token) != null;
+    }
+
+    @Override
+    public Authentication getAuthentication(String token) {
+        if (token == null) {
+            return null;
+        }
+
+        try {
+            return toAuthentication(jwtParser.parseSignedClaims(token).getPayload(), token);
+        } catch (Exception e) {
+            log.error("Authentication error: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public Optional<Authentication> authenticate(String token) {
+        Optional<Authentication> cached = verifiedTokenCache.get(token);
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        Claims claims = parseClaims(token);
+        if (claims == null) {
+            return Optional.empty();
+        }
         try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
+            Authentication authentication = toAuthentication(claims, token);
+            if (claims.getExpiration() != null) {
+                verifiedTokenCache.put(token, authentication, claims.getExpiration().getTime());
+            }
+            return Optional.of(authentication);
+        } catch (RuntimeException e) {
+            log.error("Authentication error: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Verifies the signature and expiry, returns null (after logging why) for an invalid token
+     */
+    private Claims parseClaims(String token) {
+        try {
+            return jwtParser.parseSignedClaims(token).getPayload();
         } catch (SignatureException e) {
             log.error("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
@@ -95,44 +144,23 @@ public class TokenService implements ITokenService {
         } catch (IllegalArgumentException e) {
             log.error("JWT claims string is empty: {}", e.getMessage());
         }
-        return false;
+        return null;
     }
 
-    @Override
-    public Authentication getAuthentication(String token) {
-        if (token == null) {
-            return null;
-        }
+    private Authentication toAuthentication(Claims claims, String token) {
+        String username = claims.getSubject();
 
-        try {
-            Claims claims = Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
-
-            String username = claims.getSubject();
-
-            // Extract roles from claims
-            @SuppressWarnings("unchecked")
-            List<Map<String, String>> rolesMap = (List<Map<String, String>>) claims.get("roles");
+        // Extract roles from claims
+        @SuppressWarnings("unchecked")
+        List<Map<String, String>> rolesMap = (List<Map<String, String>>) claims.get("roles");
 
-            Collection<GrantedAuthority> authorities = rolesMap != null ? rolesMap.stream()
-                    .map(role -> new SimpleGrantedAuthority(role.get("authority")))
-                    .collect(Collectors.toList()) : Collections.emptyList();
+        Collection<GrantedAuthority> authorities = rolesMap != null ? rolesMap.stream()
+                .map(role -> new SimpleGrantedAuthority(role.get("authority")))
+                .collect(Collectors.toList()) : Collections.emptyList();
 
-            // Create user principal without loading from database
-            User principal = new User(username, "", authorities);
-
-            return new UsernamePasswordAuthenticationToken(principal, token, authorities);
-        } catch (Exception e) {
-            log.error("Authentication error: {}", e.getMessage());
-            return null;
-        }
-    }
+        // Create user principal without loading from database
+        User principal = new User(username, "", authorities);
 
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtConfig.getSecret());
-        return Keys.hmacShaKeyFor(keyBytes);
+        return new UsernamePasswordAuthenticationToken(principal, token, authorities);
     }
 }
@@ -0,0 +1,112 @@
+package com.trsang.doan2.services.implementation;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * MQTT-style topic filters ("smarttrash/+/data", "smarttrash/#") indexed by
+ * level, so matching a topic only visits the branches that can match it
+ * instead of testing every filter. Reads are lock-free; writes are serialized.
+ */
+public final class TopicTrie<T> {
+
+    private static final String SINGLE_LEVEL = "+";
+    private static final String MULTI_LEVEL = "#";
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     * A filter is valid when "+" and "#" only appear as whole levels and "#" is last
+     */
+    public static boolean isValidFilter(String filter) {
+        if (filter == null || filter.isEmpty()) {
+            return false;
+        }
+        String[] levels = filter.split("/", -1);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (level.equals(MULTI_LEVEL)) {
+                if (i != levels.length - 1) {
+                    return false;
+                }
+            } else if (!level.equals(SINGLE_LEVEL) && (level.contains(MULTI_LEVEL) || level.contains(SINGLE_LEVEL))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void add(String filter, T value) {
+        Node<T> node = root;
+        for (String level : filter.split("/", -1)) {
+            node = node.children.computeIfAbsent(level, l -> new Node<>());
+        }
+        node.values.add(value);
+    }
+
+    public synchronized void remove(String filter, T value) {
+        remove(root, filter.split("/", -1), 0, value);
+    }
+
+    /**
+     * Pass every value whose filter matches the topic to the consumer. A value
+     * registered under several matching filters is passed once per filter.
+     * As in MQTT, a topic starting with "$" ($SYS/...) is not matched by a
+     * filter starting with a wildcard, only by one naming that first level.
+     */
+    public void match(String topic, Consumer<T> consumer) {
+        String[] levels = topic.split("/", -1);
+        if (levels[0].startsWith("$")) {
+            Node<T> exact = root.children.get(levels[0]);
+            if (exact != null) {
+                match(exact, levels, 1, consumer);
+            }
+            return;
+        }
+        match(root, levels, 0, consumer);
+    }
+
+    public boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    private void match(Node<T> node, String[] levels, int index, Consumer<T> consumer) {
+        // "#" also matches its parent level, so "smarttrash/#" receives "smarttrash"
+        Node<T> multi = node.children.get(MULTI_LEVEL);
+        if (multi != null) {
+            multi.values.forEach(consumer);
+        }
+        if (index == levels.length) {
+            node.values.forEach(consumer);
+            return;
+        }
+        Node<T> exact = node.children.get(levels[index]);
+        if (exact != null) {
+            match(exact, levels, index + 1, consumer);
+        }
+        Node<T> single = node.children.get(SINGLE_LEVEL);
+        if (single != null) {
+            match(single, levels, index + 1, consumer);
+        }
+    }
+
+    private boolean remove(Node<T> node, String[] levels, int index, T value) {
+        if (index == levels.length) {
+            node.values.remove(value);
+        } else {
+            Node<T> child = node.children.get(levels[index]);
+            if (child != null && remove(child, levels, index + 1, value)) {
+                node.children.remove(levels[index]);
+            }
+        }
+        // Tell the parent this branch can be pruned
+        return node != root && node.values.isEmpty() && node.children.isEmpty();
+    }
+
+    private static final class Node<T> {
+        private final Map<String, Node<T>> children = new ConcurrentHashMap<>();
+        private final Set<T> values = ConcurrentHashMap.newKeySet();
+    }
+}
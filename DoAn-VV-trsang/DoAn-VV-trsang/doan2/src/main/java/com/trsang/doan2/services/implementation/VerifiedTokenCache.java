@@ -0,0 +1,140 @@
+package com.trsang.doan2.services.implementation;
+
+import com.trsang.doan2.services.interfaces.IVerifiedTokenCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Access tokens that already passed signature and expiry checks, keyed by a
+ * SHA-256 of the token so raw JWTs are not used as map keys. Dashboards poll
+ * with the same token many times a minute; a hit skips the HMAC check, the
+ * claims parse and rebuilding the authorities.
+ */
+@Slf4j
+@Service
+public class VerifiedTokenCache implements IVerifiedTokenCache {
+
+    private final boolean enabled;
+    private final int maxEntries;
+
+    private final Map<String, CachedAuthentication> cache = new ConcurrentHashMap<>();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictedCounter;
+
+    public VerifiedTokenCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.jwt.cache.enabled:true}") boolean enabled,
+            @Value("${app.jwt.cache.max-entries:10000}") int maxEntries) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+
+        Gauge.builder("auth.token.cache.size", cache, Map::size).register(meterRegistry);
+        this.hitCounter = meterRegistry.counter("auth.token.cache.requests", "result", "hit");
+        this.missCounter = meterRegistry.counter("auth.token.cache.requests", "result", "miss");
+        this.evictedCounter = meterRegistry.counter("auth.token.cache.revoked");
+    }
+
+    @Override
+    public Optional<Authentication> get(String token) {
+        if (!enabled || token == null) {
+            return Optional.empty();
+        }
+        String key = hash(token);
+        CachedAuthentication cached = cache.get(key);
+        if (cached != null) {
+            if (cached.expiresAt() > System.currentTimeMillis()) {
+                hitCounter.increment();
+                return Optional.of(cached.authentication());
+            }
+            cache.remove(key, cached);
+        }
+        missCounter.increment();
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(String token, Authentication authentication, long expiresAtMs) {
+        if (!enabled || token == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (expiresAtMs <= now) {
+            return;
+        }
+        if (cache.size() >= maxEntries) {
+            evictExpired(now);
+        }
+        cache.put(hash(token), new CachedAuthentication(authentication, expiresAtMs));
+    }
+
+    @Override
+    public void invalidateUser(String username) {
+        if (username == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Evict again after commit so a request racing the revocation cannot leave an entry behind
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeUser(username);
+                }
+            });
+        }
+        removeUser(username);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    private void removeUser(String username) {
+        // Revocation is rare next to lookups, so a scan beats keeping a second per-user index in sync
+        cache.values().removeIf(entry -> {
+            boolean match = username.equals(entry.authentication().getName());
+            if (match) {
+                evictedCounter.increment();
+            }
+            return match;
+        });
+    }
+
+    private void evictExpired(long now) {
+        cache.values().removeIf(entry -> entry.expiresAt() <= now);
+        if (cache.size() >= maxEntries) {
+            log.warn("Verified token cache still holds {} entries after eviction, clearing it", cache.size());
+            cache.clear();
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record CachedAuthentication(Authentication authentication, long expiresAt) {
+    }
+}
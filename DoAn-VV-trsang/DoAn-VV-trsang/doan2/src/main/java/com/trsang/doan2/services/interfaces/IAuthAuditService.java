@@ -0,0 +1,24 @@
+package com.trsang.doan2.services.interfaces;
+
+import java.util.List;
+
+import com.trsang.doan2.dtos.admin.FailedLoginStats;
+import com.trsang.doan2.events.AuthenticationEvent;
+
+public interface IAuthAuditService {
+    /**
+     * Hand an event to the audit pipeline without waiting for it to be stored,
+     * returns false if the buffer is full and the event was dropped
+     */
+    boolean record(AuthenticationEvent event);
+
+    /**
+     * Failed logins per IP and minute over the last {@code minutes} minutes, busiest first
+     */
+    List<FailedLoginStats> getFailedLoginsPerIp(int minutes);
+
+    /**
+     * Delete audit rows older than the retention period
+     */
+    void purgeExpired();
+}
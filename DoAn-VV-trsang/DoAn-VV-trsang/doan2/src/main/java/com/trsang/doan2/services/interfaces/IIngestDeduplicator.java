@@ -0,0 +1,22 @@
+package com.trsang.doan2.services.interfaces;
+
+import com.trsang.doan2.entities.SensorData;
+
+import java.util.List;
+
+public interface IIngestDeduplicator {
+    /**
+     * Record a (node, device time) key, returns false if it was already seen inside the window
+     */
+    boolean markIfNew(String nodeName, long deviceTime);
+
+    /**
+     * Forget a key whose reading was never queued, so a redelivery can still be stored
+     */
+    void forget(String nodeName, long deviceTime);
+
+    /**
+     * Remove readings from a batch that are already stored or repeated within the batch
+     */
+    List<SensorData> dropPersisted(List<SensorData> batch);
+}
@@ -0,0 +1,27 @@
+package com.trsang.doan2.services.interfaces;
+
+import com.trsang.doan2.entities.SensorData;
+
+import java.util.List;
+
+public interface IIngestMetrics {
+    /**
+     * Count a message that arrived on an inbound MQTT topic
+     */
+    void messageReceived(String topic);
+
+    /**
+     * Count a payload that could not be parsed by the given stage
+     */
+    void parseFailed(String stage);
+
+    /**
+     * Record how much later than usual a reading arrived, from the device "t" and the receive time
+     */
+    void readingReceived(String nodeName, long deviceTime, long receivedAtMs);
+
+    /**
+     * Record receive-to-commit latency for readings that were just written
+     */
+    void readingsCommitted(List<SensorData> readings);
+}
@@ -0,0 +1,29 @@
+package com.trsang.doan2.services.interfaces;
+
+import java.util.List;
+
+import com.trsang.doan2.dtos.SensorDataResponse;
+import com.trsang.doan2.entities.SensorData;
+
+public interface ILatestReadingRegistry {
+    /**
+     * Record committed readings, keeping only the newest one per node
+     */
+    void updateAll(List<SensorData> readings);
+
+    /**
+     * Latest reading of every known node, newest first
+     */
+    List<SensorDataResponse> getLatest();
+
+    /**
+     * Load the latest reading per node from the database
+     */
+    void warmUp();
+
+    /**
+     * Compare the registry with the database rows since its oldest entry, repair differences and
+     * return how many were found
+     */
+    int reconcile();
+}
@@ -0,0 +1,15 @@
+package com.trsang.doan2.services.interfaces;
+
+import com.trsang.doan2.exceptions.LoginThrottledException;
+
+public interface ILoginAttemptLimiter {
+    /**
+     * Throws if the username or the IP has too many recent failed logins; meant to run before BCrypt
+     */
+    void checkAllowed(String username, String ipAddress) throws LoginThrottledException;
+
+    /**
+     * Forget the failures and any block for a username, e.g. after an admin unlocks it
+     */
+    void reset(String username);
+}
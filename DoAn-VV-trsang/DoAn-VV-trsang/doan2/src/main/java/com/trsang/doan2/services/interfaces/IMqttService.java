@@ -1,9 +1,11 @@
 package com.trsang.doan2.services.interfaces;
 
 import com.trsang.doan2.entities.Mqtt;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface IMqttService {
     /**
@@ -42,22 +44,35 @@ public interface IMqttService {
     void deleteMqttDevice(UUID id);
 
     /**
-     * Publish message to MQTT topic
+     * Publish message to MQTT topic without blocking, completes once the broker has acknowledged it
+     * (QoS 1/2) or it has been written (QoS 0). When the in-flight window is full the message waits
+     * for a slot up to publish-timeout-ms, then the future fails. Invalid topics throw ServiceException
      */
-    void publishMessage(String topic, String message, int qos);
+    CompletableFuture<Void> publishMessage(String topic, String message, int qos);
 
     /**
-     * Subscribe to MQTT topic
+     * Publish the same command to each node's command topic without blocking, completes with the
+     * nodes that failed. Node names that are not a single topic level throw ServiceException
+     */
+    CompletableFuture<List<String>> publishToNodes(Collection<String> nodeNames, String message, int qos);
+
+    /**
+     * Subscribe the inbound adapter to an additional MQTT topic
      */
     void subscribeTopic(String topic, int qos);
 
     /**
-     * Unsubscribe from MQTT topic
+     * Remove a topic from the inbound adapter
      */
     void unsubscribeTopic(String topic);
 
     /**
-     * Check if MQTT broker is connected
+     * Check if the outbound (publishing) client is connected to the broker
      */
     boolean isBrokerConnected();
+
+    /**
+     * Check if the inbound adapter is connected and subscribed
+     */
+    boolean isSubscriberConnected();
 }
@@ -0,0 +1,21 @@
+package com.trsang.doan2.services.interfaces;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public interface INodeUserCache {
+    /**
+     * Resolve the owning user id for a node, falling back to the default ingest user
+     */
+    Optional<UUID> resolveUserId(String nodeName);
+
+    /**
+     * Drop the cached entry for a username once the current transaction commits
+     */
+    void invalidate(String username);
+
+    /**
+     * Drop every cached entry
+     */
+    void invalidateAll();
+}
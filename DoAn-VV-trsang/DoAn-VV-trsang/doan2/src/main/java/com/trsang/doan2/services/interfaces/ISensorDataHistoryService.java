@@ -0,0 +1,13 @@
+package com.trsang.doan2.services.interfaces;
+
+import java.time.LocalDateTime;
+
+import com.trsang.doan2.dtos.SensorDataHistoryPage;
+
+public interface ISensorDataHistoryService {
+    /**
+     * One page of readings, newest first, within [from, to) and optionally for a single node.
+     * Pass the previous page's nextCursor to continue scrolling back in time.
+     */
+    SensorDataHistoryPage getHistory(String nodeName, LocalDateTime from, LocalDateTime to, String cursor, Integer limit);
+}
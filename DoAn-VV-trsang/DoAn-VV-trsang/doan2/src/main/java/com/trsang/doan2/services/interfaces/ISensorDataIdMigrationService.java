@@ -0,0 +1,9 @@
+package com.trsang.doan2.services.interfaces;
+
+public interface ISensorDataIdMigrationService {
+    /**
+     * Re-key sensor_data rows that still have random (v4) ids with UUIDv7 ids derived
+     * from their timestamp. Returns the number of rows updated.
+     */
+    long migrateLegacyIds();
+}
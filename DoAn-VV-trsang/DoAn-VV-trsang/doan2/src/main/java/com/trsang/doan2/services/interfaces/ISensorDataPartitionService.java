@@ -0,0 +1,22 @@
+package com.trsang.doan2.services.interfaces;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface ISensorDataPartitionService {
+    /**
+     * Partition sensor_data by month if it is not yet, and create partitions for the coming months
+     */
+    void maintainPartitions();
+
+    /**
+     * Upper bound of the partition holding the given timestamp, if that whole partition lies before the cutoff.
+     * Empty when partitioning is disabled or the table is not partitioned.
+     */
+    Optional<LocalDateTime> findExpiredPartitionEnd(LocalDateTime timestamp, LocalDateTime cutoff);
+
+    /**
+     * Drop every partition whose upper bound is at or before the given time
+     */
+    void dropPartitionsBefore(LocalDateTime end);
+}
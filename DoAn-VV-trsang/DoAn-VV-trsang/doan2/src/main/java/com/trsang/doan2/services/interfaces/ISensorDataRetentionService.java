@@ -0,0 +1,9 @@
+package com.trsang.doan2.services.interfaces;
+
+public interface ISensorDataRetentionService {
+    /**
+     * Make sure rollups cover raw readings past the retention period, then delete those readings
+     * in small batches. Returns the number of raw rows deleted.
+     */
+    long applyRetention();
+}
@@ -0,0 +1,27 @@
+package com.trsang.doan2.services.interfaces;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import com.trsang.doan2.dtos.SensorDataRollupResponse;
+import com.trsang.doan2.entities.SensorData;
+import com.trsang.doan2.entities.SensorDataRollup;
+
+public interface ISensorDataRollupService {
+    /**
+     * Fold a batch of new readings into every rollup resolution.
+     * Must run in the transaction that inserts the readings.
+     */
+    void applyBatch(List<SensorData> readings);
+
+    /**
+     * Same as {@link #applyBatch(List)} restricted to some resolutions, for rebuilding old buckets
+     */
+    void applyBatch(List<SensorData> readings, Collection<SensorDataRollup.Resolution> resolutions);
+
+    /**
+     * Buckets within [from, to) at the given resolution, oldest first, for one node or all nodes
+     */
+    List<SensorDataRollupResponse> getRollups(String nodeName, String resolution, LocalDateTime from, LocalDateTime to);
+}
@@ -0,0 +1,36 @@
+package com.trsang.doan2.services.interfaces;
+
+import com.trsang.doan2.entities.SensorData;
+
+import java.util.List;
+
+public interface ISensorDataSpool {
+    /**
+     * Whether readings go through the disk spool before the database
+     */
+    boolean isEnabled();
+
+    /**
+     * Append a reading, returns once it is on disk or false if the spool is full or unwritable
+     */
+    boolean append(SensorData sensorData);
+
+    /**
+     * Read from the oldest uncommitted reading until the batch is full or the timeout passes.
+     * A batch that is not committed is read again by the next poll
+     */
+    Batch poll(int maxReadings, long timeoutMs) throws InterruptedException;
+
+    /**
+     * Mark everything up to the end of the batch as stored and release finished segments
+     */
+    void commit(Batch batch);
+
+    /**
+     * Bytes appended but not committed yet
+     */
+    long getBacklogBytes();
+
+    record Batch(List<SensorData> readings, long segment, int offset) {
+    }
+}
@@ -0,0 +1,20 @@
+package com.trsang.doan2.services.interfaces;
+
+import com.trsang.doan2.entities.SensorData;
+
+public interface ISensorDataWriter {
+    /**
+     * Queue a reading for the next batch insert, returns false if the buffer is full
+     */
+    boolean enqueue(SensorData sensorData);
+
+    /**
+     * Write everything currently buffered on the calling thread
+     */
+    void flush();
+
+    /**
+     * Number of readings waiting to be written
+     */
+    int getQueueSize();
+}
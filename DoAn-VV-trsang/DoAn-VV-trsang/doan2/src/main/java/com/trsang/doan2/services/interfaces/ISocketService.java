@@ -1,11 +1,45 @@
 package com.trsang.doan2.services.interfaces;
 
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
 import org.springframework.web.socket.WebSocketSession;
 
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+import com.trsang.doan2.dtos.responses.WebSocketSessionStats;
+
 public interface ISocketService {
     void addSession(WebSocketSession session);
 
     void removeSession(WebSocketSession session);
 
+    /**
+     * Send to every session whose subscriptions match the topic, and to sessions
+     * that never subscribed. Returns without waiting for any client.
+     */
     void sendMessage(String topic, Object data);
+
+    /**
+     * Same as {@link #sendMessage(String, Object)}, and also matches geo-box
+     * subscriptions. The reading is only parsed when such subscriptions exist;
+     * the supplier may return null when the payload has no usable position.
+     */
+    void sendMessage(String topic, Object data, Supplier<TelemetryReading> reading);
+
+    /**
+     * Send a node's full state. Sessions that received the previous state for
+     * this topic get only the changed fields (delta=true), others get it whole.
+     */
+    void sendState(String topic, Map<String, Object> state, Supplier<TelemetryReading> reading);
+
+    /**
+     * Handle a subscribe/unsubscribe frame sent by a client
+     */
+    void handleClientMessage(WebSocketSession session, String payload);
+
+    /**
+     * Outbound queue state of every session
+     */
+    List<WebSocketSessionStats> getSessionStats();
 }
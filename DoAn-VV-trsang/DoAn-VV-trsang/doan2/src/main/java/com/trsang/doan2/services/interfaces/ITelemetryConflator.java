@@ -0,0 +1,19 @@
+package com.trsang.doan2.services.interfaces;
+
+import java.util.function.Supplier;
+
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+
+public interface ITelemetryConflator {
+    /**
+     * Hand a telemetry message to the WebSocket path. It is pushed right away if
+     * its node was quiet for a whole window, otherwise it replaces any update
+     * still waiting for that node and goes out on the next tick.
+     */
+    void submit(String topic, Object payload, Supplier<TelemetryReading> reading);
+
+    /**
+     * Number of nodes with an update waiting for the next tick
+     */
+    int getPendingCount();
+}
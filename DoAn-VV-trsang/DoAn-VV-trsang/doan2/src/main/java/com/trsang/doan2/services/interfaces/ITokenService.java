@@ -1,5 +1,7 @@
 package com.trsang.doan2.services.interfaces;
 
+import java.util.Optional;
+
 import org.springframework.security.core.Authentication;
 
 import com.trsang.doan2.security.UserDetailsImpl;
@@ -10,4 +12,10 @@ public interface ITokenService {
     String getUsernameFromToken(String token);
     boolean validateToken(String token);
     Authentication getAuthentication(String token);
+
+    /**
+     * Verify the signature and expiry and build the authentication from the claims in one parse,
+     * empty if the token is not valid
+     */
+    Optional<Authentication> authenticate(String token);
 }
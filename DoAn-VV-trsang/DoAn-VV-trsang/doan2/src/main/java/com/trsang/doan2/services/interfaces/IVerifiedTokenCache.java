@@ -0,0 +1,27 @@
+package com.trsang.doan2.services.interfaces;
+
+import java.util.Optional;
+
+import org.springframework.security.core.Authentication;
+
+public interface IVerifiedTokenCache {
+    /**
+     * Authentication already built for this access token, empty on a miss or once the token has expired
+     */
+    Optional<Authentication> get(String token);
+
+    /**
+     * Remember a verified token until its expiry (epoch millis)
+     */
+    void put(String token, Authentication authentication, long expiresAtMs);
+
+    /**
+     * Drop every cached token of a user, again after the current transaction commits
+     */
+    void invalidateUser(String username);
+
+    /**
+     * Drop every cached token
+     */
+    void invalidateAll();
+}
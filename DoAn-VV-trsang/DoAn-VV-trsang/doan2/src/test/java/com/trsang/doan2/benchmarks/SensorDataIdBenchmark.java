@@ -0,0 +1,124 @@
+package com.trsang.doan2.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.trsang.doan2.entities.id.UuidV7Generator;
+
+/**
+ * Random v4 ids against UuidV7Generator ids as the key of a growing table:
+ * inserts into a large sorted map (the shape of a clustered B-tree index) and
+ * batched JDBC inserts into an embedded H2 table keyed on the id. Each
+ * iteration starts from a prefilled index and adds one block of new rows.
+ * Run with: mvn test-compile, then main() on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class SensorDataIdBenchmark {
+
+    private static final int PREFILLED_ROWS = 500_000;
+    private static final int INSERTED_ROWS = 100_000;
+    private static final int JDBC_BATCH_SIZE = 1000;
+
+    @Param({ "V4", "V7" })
+    public String idType;
+
+    private TreeMap<UUID, Boolean> index;
+    private Connection connection;
+    private int database;
+
+    @Setup(Level.Iteration)
+    public void prefill() throws SQLException {
+        index = new TreeMap<>();
+        for (int i = 0; i < PREFILLED_ROWS; i++) {
+            index.put(nextId(), Boolean.TRUE);
+        }
+
+        connection = DriverManager.getConnection("jdbc:h2:mem:ids" + database++);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE sensor_data (id UUID PRIMARY KEY, node_name VARCHAR(50), "
+                    + "timestamp TIMESTAMP, trash_level DOUBLE)");
+        }
+        connection.setAutoCommit(false);
+        insertRows(PREFILLED_ROWS);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public TreeMap<UUID, Boolean> sortedInsert() {
+        for (int i = 0; i < INSERTED_ROWS; i++) {
+            index.put(nextId(), Boolean.TRUE);
+        }
+        return index;
+    }
+
+    @Benchmark
+    public int batchInsert() throws SQLException {
+        return insertRows(INSERTED_ROWS);
+    }
+
+    private int insertRows(int rows) throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO sensor_data (id, node_name, timestamp, trash_level) VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= rows; i++) {
+                insert.setObject(1, nextId());
+                insert.setString(2, "node" + (i % 50));
+                insert.setTimestamp(3, now);
+                insert.setDouble(4, i % 100);
+                insert.addBatch();
+                if (i % JDBC_BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        return rows;
+    }
+
+    private UUID nextId() {
+        return "V7".equals(idType) ? UuidV7Generator.next() : UUID.randomUUID();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SensorDataIdBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,85 @@
+package com.trsang.doan2.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+import com.trsang.doan2.services.implementation.TelemetryParser;
+
+/**
+ * TelemetryParser against the readTree path MqttDataSaver used before it.
+ * Run with: mvn test-compile, then main() on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelemetryParserBenchmark {
+
+    private final byte[] payload = ("{\"n\":\"node12\",\"t\":8123456,\"ax\":0.12,\"ay\":-0.31,\"az\":9.78,"
+            + "\"g\":412,\"trash\":63.5,\"lat\":10.762622,\"lon\":106.660172,\"sat\":7}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TelemetryParser telemetryParser = new TelemetryParser();
+
+    /**
+     * Also derives the tipping flag, which readTree computes from the raw axes
+     */
+    @Benchmark
+    public void streamingParser(Blackhole blackhole) throws IOException {
+        TelemetryReading reading = telemetryParser.parse(payload);
+        blackhole.consume(reading);
+        blackhole.consume(reading.isTipping());
+    }
+
+    /**
+     * The previous path: platform-charset String, JsonNode tree, has()/get() per field
+     */
+    @Benchmark
+    public void readTree(Blackhole blackhole) throws IOException {
+        JsonNode jsonNode = objectMapper.readTree(new String(payload));
+        blackhole.consume(jsonNode.has("n") ? jsonNode.get("n").asText() : null);
+        blackhole.consume(jsonNode.has("t") ? jsonNode.get("t").asLong() : 0L);
+        blackhole.consume(jsonNode.has("trash") ? jsonNode.get("trash").asDouble() : 0.0);
+        blackhole.consume(jsonNode.has("g") ? jsonNode.get("g").asInt() : 0);
+        blackhole.consume(jsonNode.has("lat") ? jsonNode.get("lat").asDouble() : 0.0);
+        blackhole.consume(jsonNode.has("lon") ? jsonNode.get("lon").asDouble() : 0.0);
+        blackhole.consume(jsonNode.has("sat") ? jsonNode.get("sat").asInt() : 0);
+        if (jsonNode.has("ax") && jsonNode.has("ay") && jsonNode.has("az")) {
+            double ax = jsonNode.get("ax").asDouble();
+            double ay = jsonNode.get("ay").asDouble();
+            double az = jsonNode.get("az").asDouble();
+            double totalAcc = Math.sqrt(ax * ax + ay * ay + az * az);
+            blackhole.consume(Math.abs(az) < totalAcc * 0.5);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TelemetryParserBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
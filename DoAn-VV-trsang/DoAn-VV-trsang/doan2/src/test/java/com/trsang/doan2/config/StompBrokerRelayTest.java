@@ -0,0 +1,127 @@
+package com.trsang.doan2.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.ReactorNettyTcpStompClient;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+
+/**
+ * WebSocketConfig in relay mode against an embedded Artemis STOMP acceptor,
+ * standing in for the RabbitMQ/ActiveMQ broker used in production: a broadcast
+ * sent through the relay must reach a client subscribed at the broker itself,
+ * as it would for a session held by another backend instance.
+ */
+@SpringJUnitWebConfig(WebSocketConfig.class)
+class StompBrokerRelayTest {
+
+    private static EmbeddedActiveMQ broker;
+    private static int brokerPort;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private StompBrokerRelayMessageHandler brokerRelay;
+
+    @DynamicPropertySource
+    static void relayProperties(DynamicPropertyRegistry registry) throws Exception {
+        startBroker();
+        registry.add("app.websocket.stomp.relay.enabled", () -> "true");
+        registry.add("app.websocket.stomp.relay.host", () -> "127.0.0.1");
+        registry.add("app.websocket.stomp.relay.port", () -> brokerPort);
+    }
+
+    @AfterAll
+    static void stopBroker() throws Exception {
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Test
+    void broadcastReachesSubscriberOfExternalBroker() throws Exception {
+        awaitBrokerAvailable();
+
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        ReactorNettyTcpStompClient client = new ReactorNettyTcpStompClient("127.0.0.1", brokerPort);
+        client.setMessageConverter(new StringMessageConverter());
+        client.setTaskScheduler(scheduler);
+        try {
+            StompSession session = client.connectAsync(new StompSessionHandlerAdapter() { })
+                    .get(10, TimeUnit.SECONDS);
+            CompletableFuture<String> received = new CompletableFuture<>();
+            CountDownLatch subscribed = new CountDownLatch(1);
+            session.setAutoReceipt(true);
+            session.subscribe("/topic/telemetry", new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return String.class;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    received.complete((String) payload);
+                }
+            }).addReceiptTask(subscribed::countDown);
+            assertTrue(subscribed.await(10, TimeUnit.SECONDS), "subscription not confirmed by the broker");
+
+            messagingTemplate.convertAndSend("/topic/telemetry", "node1 63.5");
+
+            assertEquals("node1 63.5", received.get(10, TimeUnit.SECONDS));
+            session.disconnect();
+        } finally {
+            client.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    private void awaitBrokerAvailable() throws InterruptedException {
+        // The relay's system session connects in the background once the context is up
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!brokerRelay.isBrokerAvailable() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(brokerRelay.isBrokerAvailable(), "relay did not connect to the broker");
+    }
+
+    private static void startBroker() throws Exception {
+        if (broker != null) {
+            return;
+        }
+        try (ServerSocket socket = new ServerSocket(0)) {
+            brokerPort = socket.getLocalPort();
+        }
+        Configuration configuration = new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("stomp", "tcp://127.0.0.1:" + brokerPort
+                        + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+        broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(configuration);
+        broker.start();
+    }
+}
@@ -0,0 +1,48 @@
+package com.trsang.doan2.entities.id;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class UuidV7GeneratorTest {
+
+    @Test
+    void idsIncreaseWithinTheSameMillisecond() {
+        // More ids than the 12-bit counter holds, so some milliseconds fill up and move ahead
+        UUID previous = UuidV7Generator.next();
+        boolean sharedMillisecond = false;
+        for (int i = 0; i < 20_000; i++) {
+            UUID id = UuidV7Generator.next();
+            assertTrue(Long.compareUnsigned(previous.getMostSignificantBits(), id.getMostSignificantBits()) < 0,
+                    previous + " is not before " + id);
+            sharedMillisecond |= millis(previous) == millis(id);
+            previous = id;
+        }
+        assertTrue(sharedMillisecond, "no two ids were issued in the same millisecond");
+    }
+
+    @Test
+    void idsCarryVersionVariantAndCurrentTime() {
+        long before = System.currentTimeMillis();
+        UUID id = UuidV7Generator.next();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertTrue(millis(id) >= before && millis(id) <= System.currentTimeMillis() + 1000);
+    }
+
+    @Test
+    void idForTimestampKeepsTheGivenMillisecond() {
+        UUID id = UuidV7Generator.forTimestamp(1_700_000_000_123L);
+
+        assertEquals(1_700_000_000_123L, millis(id));
+        assertEquals(7, id.version());
+    }
+
+    private static long millis(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+}
@@ -0,0 +1,83 @@
+package com.trsang.doan2.services.implementation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.jupiter.api.Test;
+
+import com.trsang.doan2.repositories.ISensorDataRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class IngestDeduplicatorTest {
+
+    private static final long WINDOW_MS = 200;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private IngestDeduplicator deduplicator(int maxKeysPerNode) {
+        return new IngestDeduplicator(mock(ISensorDataRepository.class), meterRegistry,
+                true, false, WINDOW_MS, maxKeysPerNode, 100);
+    }
+
+    @Test
+    void redeliveryWithinTheWindowIsDropped() {
+        IngestDeduplicator deduplicator = deduplicator(16);
+
+        assertTrue(deduplicator.markIfNew("node1", 1000));
+        assertFalse(deduplicator.markIfNew("node1", 1000));
+        // Same device time from another node is a different frame
+        assertTrue(deduplicator.markIfNew("node2", 1000));
+        assertEquals(1.0, meterRegistry.counter("ingest.dedup.duplicates", "source", "memory").count());
+    }
+
+    @Test
+    void keyIsAcceptedAgainOnceTheWindowHasPassed() throws InterruptedException {
+        IngestDeduplicator deduplicator = deduplicator(16);
+
+        assertTrue(deduplicator.markIfNew("node1", 1000));
+        Thread.sleep(WINDOW_MS * 2);
+        // A rebooted device reusing "t" after the window is a new reading
+        assertTrue(deduplicator.markIfNew("node1", 1000));
+        assertFalse(deduplicator.markIfNew("node1", 1000));
+    }
+
+    @Test
+    void oldestKeyIsEvictedPastTheLimitPerNode() {
+        IngestDeduplicator deduplicator = deduplicator(2);
+
+        assertTrue(deduplicator.markIfNew("node1", 1));
+        assertTrue(deduplicator.markIfNew("node1", 2));
+        assertTrue(deduplicator.markIfNew("node1", 3));
+
+        assertTrue(deduplicator.markIfNew("node1", 1));
+        assertFalse(deduplicator.markIfNew("node1", 3));
+    }
+
+    @Test
+    void forgottenKeyIsAcceptedOnRedelivery() {
+        IngestDeduplicator deduplicator = deduplicator(16);
+
+        assertTrue(deduplicator.markIfNew("node1", 1000));
+        // The enqueue failed, so the broker's redelivery must not be dropped as a duplicate
+        deduplicator.forget("node1", 1000);
+        assertTrue(deduplicator.markIfNew("node1", 1000));
+        assertFalse(deduplicator.markIfNew("node1", 1000));
+
+        // Forgetting an unknown node or key is a no-op
+        deduplicator.forget("unknown", 1000);
+        deduplicator.forget("node1", 2000);
+        assertFalse(deduplicator.markIfNew("node1", 1000));
+    }
+
+    @Test
+    void disabledDeduplicatorAcceptsEverything() {
+        IngestDeduplicator deduplicator = new IngestDeduplicator(mock(ISensorDataRepository.class), meterRegistry,
+                false, false, WINDOW_MS, 16, 100);
+
+        assertTrue(deduplicator.markIfNew("node1", 1000));
+        assertTrue(deduplicator.markIfNew("node1", 1000));
+    }
+}
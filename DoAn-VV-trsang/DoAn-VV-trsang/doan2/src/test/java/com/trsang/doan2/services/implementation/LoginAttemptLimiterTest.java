@@ -0,0 +1,100 @@
+package com.trsang.doan2.services.implementation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.trsang.doan2.events.AuthenticationEvent;
+import com.trsang.doan2.events.AuthenticationEvent.AuthEventType;
+import com.trsang.doan2.exceptions.LoginThrottledException;
+import com.trsang.doan2.repositories.IUserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LoginAttemptLimiterTest {
+
+    @Test
+    void windowSumsOnlyTheLastBuckets() {
+        LoginAttemptLimiter.FailureWindow window = new LoginAttemptLimiter.FailureWindow(3);
+
+        assertEquals(1, window.increment(10));
+        assertEquals(2, window.increment(10));
+        assertEquals(3, window.increment(11));
+        assertEquals(4, window.increment(12));
+        // Bucket 13 reuses bucket 10's slot, its two failures leave the window
+        assertEquals(3, window.increment(13));
+        assertEquals(3, window.sum(13));
+        assertEquals(1, window.sum(15));
+        assertEquals(0, window.sum(16));
+    }
+
+    @Test
+    void slotFromAnOlderLapIsNotCounted() {
+        LoginAttemptLimiter.FailureWindow window = new LoginAttemptLimiter.FailureWindow(3);
+
+        window.increment(1);
+        window.increment(1);
+        // Same slot, many buckets later: starts again from one
+        assertEquals(1, window.increment(301));
+        assertEquals(1, window.sum(301));
+    }
+
+    @Test
+    void concurrentFailuresTripTheLockExactlyOnce() throws InterruptedException {
+        IUserRepository userRepository = mock(IUserRepository.class);
+        when(userRepository.extendLockedUntil(eq("admin"), any())).thenReturn(1);
+        ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LoginAttemptLimiter limiter = new LoginAttemptLimiter(userRepository, eventPublisher,
+                mock(PlatformTransactionManager.class), meterRegistry,
+                true, 60_000, 6, 5, 1_000_000, 60_000, 1000);
+
+        int threads = 8;
+        int failuresPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int t = 0; t < threads; t++) {
+                String ip = "10.0.0." + t;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < failuresPerThread; i++) {
+                        limiter.onAuthenticationEvent(new AuthenticationEvent(this, "Admin", AuthEventType.LOGIN_FAILED,
+                                "Bad credentials", ip));
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        verify(userRepository, times(1)).extendLockedUntil(eq("admin"), any());
+        assertEquals(1.0, meterRegistry.counter("auth.login.limiter.locked").count());
+        assertThrows(LoginThrottledException.class, () -> limiter.checkAllowed("admin", "10.0.0.99"));
+        // The IP threshold is far away, so only the username is blocked
+        limiter.reset("admin");
+        limiter.checkAllowed("admin", "10.0.0.1");
+    }
+}
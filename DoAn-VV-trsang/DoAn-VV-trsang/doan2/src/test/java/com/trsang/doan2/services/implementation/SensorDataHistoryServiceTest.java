@@ -0,0 +1,122 @@
+package com.trsang.doan2.services.implementation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import com.trsang.doan2.dtos.SensorDataHistoryPage;
+import com.trsang.doan2.dtos.SensorDataHistoryRow;
+import com.trsang.doan2.dtos.SensorDataResponse;
+import com.trsang.doan2.repositories.ISensorDataRepository;
+
+class SensorDataHistoryServiceTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+    private final List<SensorDataHistoryRow> rows = new ArrayList<>();
+    private SensorDataHistoryService service;
+
+    @BeforeEach
+    void setUp() {
+        ISensorDataRepository repository = mock(ISensorDataRepository.class);
+        // Same predicate and order as the JPQL keyset query
+        when(repository.findHistoryPage(any(), any(), any(), any())).thenAnswer(invocation -> {
+            LocalDateTime from = invocation.getArgument(0);
+            LocalDateTime beforeTimestamp = invocation.getArgument(1);
+            UUID beforeId = invocation.getArgument(2);
+            Limit limit = invocation.getArgument(3);
+            return rows.stream()
+                    .filter(row -> !row.timestamp().isBefore(from))
+                    .filter(row -> row.timestamp().isBefore(beforeTimestamp)
+                            || row.timestamp().isEqual(beforeTimestamp) && row.id().compareTo(beforeId) < 0)
+                    .sorted(newestFirst())
+                    .limit(limit.max())
+                    .toList();
+        });
+        service = new SensorDataHistoryService(repository, 100, 1000);
+    }
+
+    @Test
+    void cursorWalksEveryRowOnceAcrossTimestampTies() {
+        // Seven readings share one timestamp, so page boundaries fall inside the tie
+        for (int i = 0; i < 3; i++) {
+            addRow(BASE.plusSeconds(10 + i));
+        }
+        for (int i = 0; i < 7; i++) {
+            addRow(BASE.plusSeconds(5));
+        }
+        for (int i = 0; i < 3; i++) {
+            addRow(BASE.plusSeconds(i));
+        }
+        List<String> expected = rows.stream().sorted(newestFirst()).map(row -> row.id().toString()).toList();
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            SensorDataHistoryPage page = service.getHistory(null, null, BASE.plusMinutes(1), cursor, 3);
+            page.getData().stream().map(SensorDataResponse::getId).forEach(seen::add);
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(expected, seen);
+        assertEquals(5, pages);
+    }
+
+    @Test
+    void lastFullPageHasNoCursor() {
+        for (int i = 0; i < 4; i++) {
+            addRow(BASE.plusSeconds(i));
+        }
+
+        SensorDataHistoryPage first = service.getHistory(null, null, null, null, 2);
+        assertNotNull(first.getNextCursor());
+        SensorDataHistoryPage second = service.getHistory(null, null, null, first.getNextCursor(), 2);
+        assertEquals(2, second.getData().size());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void toIsExclusiveAndFromInclusive() {
+        addRow(BASE);
+        addRow(BASE.plusSeconds(1));
+        addRow(BASE.plusSeconds(2));
+
+        SensorDataHistoryPage page = service.getHistory(null, BASE, BASE.plusSeconds(2), null, 10);
+
+        assertEquals(2, page.getData().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void rejectsInvalidCursorAndLimit() {
+        assertThrows(IllegalArgumentException.class, () -> service.getHistory(null, null, null, "bm90LWEtY3Vyc29y", 10));
+        assertThrows(IllegalArgumentException.class, () -> service.getHistory(null, null, null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> service.getHistory(null, BASE, BASE, null, 10));
+    }
+
+    private void addRow(LocalDateTime timestamp) {
+        rows.add(new SensorDataHistoryRow(UUID.randomUUID(), "node1", 10.0, 106.0, 42.0, 0, timestamp));
+    }
+
+    private static Comparator<SensorDataHistoryRow> newestFirst() {
+        return Comparator.comparing(SensorDataHistoryRow::timestamp)
+                .thenComparing(SensorDataHistoryRow::id)
+                .reversed();
+    }
+}
@@ -0,0 +1,58 @@
+package com.trsang.doan2.services.implementation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.trsang.doan2.dtos.mqtt.TelemetryReading;
+
+class TelemetryFrameEncoderTest {
+
+    private final TelemetryFrameEncoder encoder = new TelemetryFrameEncoder();
+
+    @Test
+    void encodesFieldsAtTheDocumentedOffsets() {
+        ByteBuffer frame = encode("node1");
+
+        assertEquals(TelemetryFrameEncoder.TYPE_TELEMETRY, frame.get(0));
+        assertEquals(5, frame.get(2));
+        assertEquals("node1", new String(frame.array(), 3, 5, StandardCharsets.UTF_8));
+        assertEquals(1_700_000_000_000L, frame.getLong(8));
+        assertEquals(8123456L, frame.getLong(16));
+        assertEquals(63.5f, frame.getFloat(24));
+        assertEquals(412, frame.getInt(28));
+        assertEquals(7, frame.get(40));
+        assertEquals(41, frame.capacity());
+    }
+
+    @Test
+    void longNameIsCutAtACharacterBoundary() {
+        // "ạ" is 3 bytes (253..255), a plain 255-byte cut would keep two of them
+        String name = "n".repeat(253) + "ại";
+        ByteBuffer frame = encode(name);
+
+        int length = frame.get(2) & 0xFF;
+        assertEquals(253, length);
+        assertEquals("n".repeat(253), new String(frame.array(), 3, length, StandardCharsets.UTF_8));
+        assertEquals(1_700_000_000_000L, frame.getLong(3 + length));
+    }
+
+    @Test
+    void nameOfExactlyTheLimitIsKept() {
+        String name = "n".repeat(253) + "Đ";
+        ByteBuffer frame = encode(name);
+
+        assertEquals(255, frame.get(2) & 0xFF);
+        assertEquals(name, new String(frame.array(), 3, 255, StandardCharsets.UTF_8));
+    }
+
+    private ByteBuffer encode(String nodeName) {
+        TelemetryReading reading = new TelemetryReading(nodeName, 8123456L, 0.12, -0.31, 9.78, true,
+                412, 63.5, 10.762622, 106.660172, 7);
+        return ByteBuffer.wrap(encoder.encode(nodeName, reading, 1_700_000_000_000L)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
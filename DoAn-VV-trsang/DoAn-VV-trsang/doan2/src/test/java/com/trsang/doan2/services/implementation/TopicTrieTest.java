@@ -0,0 +1,99 @@
+package com.trsang.doan2.services.implementation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TopicTrieTest {
+
+    private final TopicTrie<String> trie = new TopicTrie<>();
+
+    @Test
+    void singleLevelWildcardMatchesExactlyOneLevel() {
+        trie.add("smarttrash/+/data", "data");
+
+        assertEquals(List.of("data"), match("smarttrash/node1/data"));
+        assertEquals(List.of(), match("smarttrash/node1/cmd"));
+        assertEquals(List.of(), match("smarttrash/data"));
+        assertEquals(List.of(), match("smarttrash/node1/sub/data"));
+    }
+
+    @Test
+    void multiLevelWildcardMatchesParentAndEveryDescendant() {
+        trie.add("smarttrash/#", "all");
+
+        assertEquals(List.of("all"), match("smarttrash"));
+        assertEquals(List.of("all"), match("smarttrash/node1"));
+        assertEquals(List.of("all"), match("smarttrash/node1/data"));
+        assertEquals(List.of(), match("other/node1"));
+    }
+
+    @Test
+    void valueIsPassedOncePerMatchingFilter() {
+        trie.add("smarttrash/node1/data", "a");
+        trie.add("smarttrash/+/data", "a");
+        trie.add("#", "b");
+
+        List<String> matched = match("smarttrash/node1/data");
+        matched.sort(null);
+        assertEquals(List.of("a", "a", "b"), matched);
+    }
+
+    @Test
+    void wildcardsAtTheFirstLevelDoNotMatchDollarTopics() {
+        trie.add("#", "all");
+        trie.add("+/broker/uptime", "single");
+        trie.add("$SYS/#", "sys");
+
+        assertEquals(List.of("sys"), match("$SYS/broker/uptime"));
+        List<String> matched = match("node/broker/uptime");
+        matched.sort(null);
+        assertEquals(List.of("all", "single"), matched);
+    }
+
+    @Test
+    void removingTheLastValuePrunesTheBranch() {
+        trie.add("smarttrash/+/data", "a");
+        trie.add("smarttrash/+/data", "b");
+
+        trie.remove("smarttrash/+/data", "a");
+        assertEquals(List.of("b"), match("smarttrash/node1/data"));
+        assertFalse(trie.isEmpty());
+
+        trie.remove("smarttrash/+/data", "b");
+        assertEquals(List.of(), match("smarttrash/node1/data"));
+        assertTrue(trie.isEmpty());
+    }
+
+    @Test
+    void removingOneFilterKeepsSiblingBranches() {
+        trie.add("smarttrash/node1/data", "a");
+        trie.add("smarttrash/node2/data", "b");
+
+        trie.remove("smarttrash/node1/data", "a");
+        trie.remove("smarttrash/unknown/data", "b");
+
+        assertEquals(List.of(), match("smarttrash/node1/data"));
+        assertEquals(List.of("b"), match("smarttrash/node2/data"));
+    }
+
+    @Test
+    void validatesWildcardPlacement() {
+        assertTrue(TopicTrie.isValidFilter("smarttrash/+/data"));
+        assertTrue(TopicTrie.isValidFilter("smarttrash/#"));
+        assertFalse(TopicTrie.isValidFilter("smarttrash/#/data"));
+        assertFalse(TopicTrie.isValidFilter("smarttrash/node+/data"));
+        assertFalse(TopicTrie.isValidFilter(""));
+    }
+
+    private List<String> match(String topic) {
+        List<String> matched = new ArrayList<>();
+        trie.match(topic, matched::add);
+        return matched;
+    }
+}